@@ -0,0 +1,65 @@
+package hamburg.dbis.bench;
+
+import hamburg.dbis.log.Durability;
+import hamburg.dbis.log.LogRecord;
+import hamburg.dbis.log.LogWriter;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Latency of appending one UPDATE record to the log, with the {@link Durability} as
+ * parameter. For all but {@code async} every append waits until it is on disk, like a
+ * commit does. The windows are {@code dbis.log.groupWindowMs} (2) and
+ * {@code dbis.log.asyncWindowMs} (10).
+ */
+class AppendBenchmark extends Benchmark {
+
+    private static final byte[] DATA = LogRecord.updateData("benchmark before image", "benchmark after image");
+
+    private LogWriter logWriter;
+    private boolean await;
+
+    AppendBenchmark() {
+        super("append", "us/op");
+    }
+
+    @Override
+    List<String> defaultParams() {
+        return List.of("strict", "group", "async", "dsync");
+    }
+
+    @Override
+    void setUp(String param) throws Exception {
+        Durability durability = Durability.parse(param);
+        long groupWindowMillis = durability == Durability.ASYNC ? Long.getLong("dbis.log.asyncWindowMs", 10)
+                : Long.getLong("dbis.log.groupWindowMs", 2);
+        await = durability.commitWaits();
+        int stripes = Integer.getInteger("dbis.log.stripes", Runtime.getRuntime().availableProcessors());
+        logWriter = new LogWriter(new File("wal"), Integer.getInteger("dbis.log.segmentSize", 16 * 1024 * 1024),
+                durability, groupWindowMillis, Integer.getInteger("dbis.log.maxBatch", 256), stripes,
+                Integer.getInteger("dbis.log.ringSize", LogWriter.defaultRingSize(stripes)));
+    }
+
+    @Override
+    double iteration(long durationNanos) {
+        long operations = 0;
+        long started = System.nanoTime();
+        long deadline = started + durationNanos;
+        long now = started;
+        while (now < deadline) {
+            long lsn = logWriter.append(LogRecord.UPDATE, 1, (int) (operations & 1023), DATA);
+            if (await) {
+                logWriter.awaitDurable(lsn);
+            }
+            operations++;
+            now = System.nanoTime();
+        }
+        return (now - started) / 1e3 / operations;
+    }
+
+    @Override
+    void tearDown() {
+        logWriter.close();
+    }
+}
@@ -0,0 +1,36 @@
+package hamburg.dbis.bench;
+
+/**
+ * Runs one benchmark with one parameter in this JVM, in the working directory the
+ * {@link BenchRunner} created for it, and prints the score of each measured iteration
+ * as a line {@code ITERATION <score>}.
+ */
+public class BenchFork {
+
+    static int WARMUP = Integer.getInteger("bench.warmup", 2);
+    static int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    static long ITERATION_MS = Long.getLong("bench.iterationMs", 1000);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchFork <benchmark> <param>");
+            System.exit(2);
+        }
+        Benchmark benchmark = Benchmark.create(args[0]);
+        benchmark.setUp(args[1]);
+        long duration = ITERATION_MS * 1_000_000L;
+        if (benchmark.singleShot()) {
+            System.out.println("ITERATION " + benchmark.iteration(duration));
+        } else {
+            for (int i = 0; i < WARMUP; i++) {
+                System.out.println("Warmup " + (i + 1) + ": " + benchmark.iteration(duration) + " " + benchmark.unit);
+            }
+            for (int i = 0; i < ITERATIONS; i++) {
+                System.out.println("ITERATION " + benchmark.iteration(duration));
+            }
+        }
+        benchmark.tearDown();
+        // the persistence manager's background threads must not keep the fork alive
+        System.exit(0);
+    }
+}
@@ -0,0 +1,212 @@
+package hamburg.dbis.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark suite of the engine. Every benchmark runs with each of its parameters in
+ * fresh JVMs (forks), each in an empty working directory, so no run sees the log, pages
+ * or JIT state of another one:
+ *
+ * <pre>
+ * write     PersistenceManager.write throughput at 1, 8 and 64 threads
+ * commit    transactions of one write and a commit, at 1, 8 and 64 threads
+ * append    log append latency with strict, group, async and dsync durability
+ * flush     PersistenceManager.flush cost with 16, 64 and 256 dirty pages
+ * recovery  RecoveryManager.startRecovery time over logs of 10^5, 10^6 and 10^7 records
+ * </pre>
+ *
+ * Arguments select benchmarks, all by default, and may give parameters, e.g.
+ * {@code write:8,64 recovery:100000}. System properties:
+ *
+ * <pre>
+ * bench.forks        JVMs per benchmark and parameter (1), repetitions for recovery
+ * bench.warmup       warmup iterations per fork (2)
+ * bench.iterations   measured iterations per fork (5)
+ * bench.iterationMs  length of an iteration (1000)
+ * bench.jvmArgs      extra arguments of the forks, e.g. -Xmx4g for 10^7 log records
+ * bench.out          CSV file the results are appended to, to compare them across changes
+ * bench.label        first column of the CSV lines, e.g. the commit measured
+ * bench.verbose      show the output of the forks (false)
+ * </pre>
+ *
+ * All {@code dbis.*} and {@code bench.*} properties are passed on to the forks, so the
+ * engine is measured with the configuration the runner is started with.
+ */
+public class BenchRunner {
+
+    static int FORKS = Integer.getInteger("bench.forks", 1);
+    static String JVM_ARGS = System.getProperty("bench.jvmArgs", "");
+    static String OUT = System.getProperty("bench.out");
+    static String LABEL = System.getProperty("bench.label", "");
+    static boolean VERBOSE = Boolean.getBoolean("bench.verbose");
+
+    private static class Result {
+        final String benchmark;
+        final String param;
+        final String unit;
+        final List<Double> samples = new ArrayList<>();
+
+        Result(String benchmark, String param, String unit) {
+            this.benchmark = benchmark;
+            this.param = param;
+            this.unit = unit;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double sample : samples) {
+                sum += sample;
+            }
+            return sum / samples.size();
+        }
+
+        // sample standard deviation, 0 for a single sample
+        double error() {
+            if (samples.size() < 2) {
+                return 0;
+            }
+            double mean = mean();
+            double sum = 0;
+            for (double sample : samples) {
+                sum += (sample - mean) * (sample - mean);
+            }
+            return Math.sqrt(sum / (samples.size() - 1));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> selected = args.length == 0 ? Benchmark.ALL : Arrays.asList(args);
+        List<Result> results = new ArrayList<>();
+        for (String selection : selected) {
+            String[] parts = selection.split(":", 2);
+            Benchmark benchmark = Benchmark.create(parts[0]);
+            List<String> params = parts.length > 1 ? Arrays.asList(parts[1].split(",")) : benchmark.defaultParams();
+            for (String param : params) {
+                Result result = new Result(benchmark.name, param, benchmark.unit);
+                for (int fork = 1; fork <= FORKS; fork++) {
+                    System.out.println("# " + benchmark.name + " " + param + ", fork " + fork + " of " + FORKS);
+                    runFork(benchmark, param, result);
+                }
+                if (!result.samples.isEmpty()) {
+                    results.add(result);
+                }
+            }
+        }
+        print(results);
+        if (OUT != null) {
+            write(results, new File(OUT));
+        }
+    }
+
+    private static void runFork(Benchmark benchmark, String param, Result result) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!JVM_ARGS.isBlank()) {
+            command.addAll(Arrays.asList(JVM_ARGS.trim().split("\\s+")));
+        }
+        for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+            String name = property.getKey().toString();
+            if (name.startsWith("dbis.") || name.startsWith("bench.")) {
+                command.add("-D" + name + "=" + property.getValue());
+            }
+        }
+        for (String property : benchmark.forkProperties()) {
+            if (System.getProperty(property.substring(0, property.indexOf('='))) == null) {
+                command.add("-D" + property);
+            }
+        }
+        command.add("-cp");
+        command.add(absoluteClassPath());
+        command.add(BenchFork.class.getName());
+        command.add(benchmark.name);
+        command.add(param);
+
+        Path dir = Files.createTempDirectory("dbis-bench");
+        try {
+            Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+            List<String> output = new ArrayList<>();
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("ITERATION ")) {
+                        double score = Double.parseDouble(line.substring("ITERATION ".length()));
+                        result.samples.add(score);
+                        System.out.printf("Iteration %d: %.3f %s%n", result.samples.size(), score, result.unit);
+                    } else if (VERBOSE) {
+                        System.out.println("  " + line);
+                    } else {
+                        output.add(line);
+                    }
+                }
+            }
+            int exit = process.waitFor();
+            if (exit != 0) {
+                System.out.println("Fork failed with exit code " + exit + ":");
+                for (String line : output) {
+                    System.out.println("  " + line);
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // the forks run in other directories
+    private static String absoluteClassPath() {
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (classPath.length() > 0) {
+                classPath.append(File.pathSeparator);
+            }
+            classPath.append(new File(entry).getAbsolutePath());
+        }
+        return classPath.toString();
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static void print(List<Result> results) {
+        System.out.println();
+        System.out.printf("%-10s %10s %4s %14s %12s  %s%n", "Benchmark", "Param", "Cnt", "Score", "Error", "Units");
+        for (Result result : results) {
+            System.out.printf("%-10s %10s %4d %14.3f %12.3f  %s%n", result.benchmark, result.param,
+                    result.samples.size(), result.mean(), result.error(), result.unit);
+        }
+    }
+
+    private static void write(List<Result> results, File file) {
+        boolean header = !file.exists() || file.length() == 0;
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, StandardCharsets.UTF_8, true))) {
+            if (header) {
+                out.println("label,benchmark,param,samples,score,error,unit");
+            }
+            for (Result result : results) {
+                out.printf(Locale.ROOT, "%s,%s,%s,%d,%.3f,%.3f,%s%n", LABEL, result.benchmark, result.param,
+                        result.samples.size(), result.mean(), result.error(), result.unit);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
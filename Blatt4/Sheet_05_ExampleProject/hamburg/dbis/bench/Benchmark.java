@@ -0,0 +1,68 @@
+package hamburg.dbis.bench;
+
+import java.util.List;
+
+/**
+ * One benchmark of the suite. {@link BenchFork} sets it up with one of its parameters,
+ * runs the warmup and measurement iterations and tears it down, all in a fresh JVM.
+ */
+abstract class Benchmark {
+
+    final String name;
+    final String unit;
+
+    Benchmark(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * @return the parameters run when none are given
+     */
+    abstract List<String> defaultParams();
+
+    void setUp(String param) throws Exception {
+    }
+
+    /**
+     * Runs for about {@code durationNanos} and returns the score of the iteration.
+     */
+    abstract double iteration(long durationNanos) throws Exception;
+
+    void tearDown() throws Exception {
+    }
+
+    /**
+     * @return system properties the forks of this benchmark get unless the runner is
+     * started with a value for them, as {@code name=value}
+     */
+    List<String> forkProperties() {
+        return List.of();
+    }
+
+    /**
+     * @return true if the benchmark can only run one iteration per JVM, without warmup
+     */
+    boolean singleShot() {
+        return false;
+    }
+
+    static Benchmark create(String name) {
+        switch (name) {
+            case "write":
+                return new TransactionBenchmark("write", 10);
+            case "commit":
+                return new TransactionBenchmark("commit", 1);
+            case "append":
+                return new AppendBenchmark();
+            case "flush":
+                return new FlushBenchmark();
+            case "recovery":
+                return new RecoveryBenchmark();
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+    static final List<String> ALL = List.of("write", "commit", "append", "flush", "recovery");
+}
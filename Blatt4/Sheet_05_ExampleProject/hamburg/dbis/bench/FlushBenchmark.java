@@ -0,0 +1,57 @@
+package hamburg.dbis.bench;
+
+import hamburg.dbis.persistence.PersistenceManager;
+
+import java.util.List;
+
+/**
+ * Cost of {@link PersistenceManager#flush()} with the number of dirty pages as
+ * parameter. Before each flush one committed transaction dirties that many pages; only
+ * the flush is timed. The forks get a buffer large enough for all of them, with the
+ * page cleaner only starting when it is full.
+ */
+class FlushBenchmark extends Benchmark {
+
+    private static final String DATA = "benchmark data 0123456789";
+
+    private int pages;
+
+    FlushBenchmark() {
+        super("flush", "ms/op");
+    }
+
+    @Override
+    List<String> defaultParams() {
+        return List.of("16", "64", "256");
+    }
+
+    @Override
+    List<String> forkProperties() {
+        return List.of("dbis.buffer.frames=1024", "dbis.cleaner.highWatermark=1.0");
+    }
+
+    @Override
+    void setUp(String param) {
+        pages = Integer.parseInt(param);
+    }
+
+    @Override
+    double iteration(long durationNanos) {
+        PersistenceManager pm = PersistenceManager.getInstance();
+        long flushing = 0;
+        int flushes = 0;
+        long deadline = System.nanoTime() + durationNanos;
+        do {
+            int taid = pm.beginTransaction();
+            for (int p = 0; p < pages; p++) {
+                pm.write(taid, 10 + p, DATA);
+            }
+            pm.commit(taid);
+            long started = System.nanoTime();
+            pm.flush();
+            flushing += System.nanoTime() - started;
+            flushes++;
+        } while (System.nanoTime() < deadline);
+        return flushing / 1e6 / flushes;
+    }
+}
@@ -0,0 +1,64 @@
+package hamburg.dbis.bench;
+
+import hamburg.dbis.log.LogRecord;
+import hamburg.dbis.log.LogWriter;
+import hamburg.dbis.recovery.RecoveryManager;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Time of {@link RecoveryManager#startRecovery()} with the number of log records as
+ * parameter. The set-up writes a log without a checkpoint: transactions of 9 updates
+ * and a commit spread over {@code bench.recovery.pages} pages (10000), the last 10
+ * transactions left unfinished. No page is on disk, so everything is redone.
+ *
+ * Recovery changes the pages, so every measurement needs a fresh JVM and log; the
+ * runner's forks are the repetitions.
+ */
+class RecoveryBenchmark extends Benchmark {
+
+    static int PAGES = Integer.getInteger("bench.recovery.pages", 10_000);
+
+    RecoveryBenchmark() {
+        super("recovery", "ms/op");
+    }
+
+    @Override
+    List<String> defaultParams() {
+        return List.of("100000", "1000000", "10000000");
+    }
+
+    @Override
+    boolean singleShot() {
+        return true;
+    }
+
+    @Override
+    void setUp(String param) throws Exception {
+        long records = Long.parseLong(param);
+        LogWriter logWriter = new LogWriter(new File("wal"), Integer.getInteger("dbis.log.segmentSize", 16 * 1024 * 1024),
+                Long.getLong("dbis.log.groupWindowMs", 2), Integer.getInteger("dbis.log.maxBatch", 256));
+        long transactions = records / 10;
+        int taid = 1000;
+        int pageid = 0;
+        for (long t = 0; t < transactions; t++, taid++) {
+            for (int u = 0; u < 9; u++) {
+                logWriter.append(LogRecord.UPDATE, taid, 10 + pageid,
+                        LogRecord.updateData("before " + taid, "after " + taid + "/" + u));
+                pageid = (pageid + 1) % PAGES;
+            }
+            if (t < transactions - 10) {
+                logWriter.append(LogRecord.COMMIT, taid, -1, (byte[]) null);
+            }
+        }
+        logWriter.close();
+    }
+
+    @Override
+    double iteration(long durationNanos) {
+        long started = System.nanoTime();
+        RecoveryManager.getInstance().startRecovery();
+        return (System.nanoTime() - started) / 1e6;
+    }
+}
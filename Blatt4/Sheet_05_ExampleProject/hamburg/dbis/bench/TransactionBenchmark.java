@@ -0,0 +1,65 @@
+package hamburg.dbis.bench;
+
+import hamburg.dbis.persistence.PersistenceManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of {@link PersistenceManager#write} and {@link PersistenceManager#commit}
+ * with the number of threads as parameter. Each thread runs transactions of
+ * {@code writesPerTransaction} writes on its own pages, so threads never wait for each
+ * other's locks. The score counts writes, or commits if a transaction has one write.
+ */
+class TransactionBenchmark extends Benchmark {
+
+    private static final int PAGES_PER_THREAD = 100;
+    private static final String DATA = "benchmark data 0123456789";
+
+    private final int writesPerTransaction;
+    private int threads;
+
+    TransactionBenchmark(String name, int writesPerTransaction) {
+        super(name, writesPerTransaction == 1 ? "commits/s" : "writes/s");
+        this.writesPerTransaction = writesPerTransaction;
+    }
+
+    @Override
+    List<String> defaultParams() {
+        return List.of("1", "8", "64");
+    }
+
+    @Override
+    void setUp(String param) {
+        threads = Integer.parseInt(param);
+    }
+
+    @Override
+    double iteration(long durationNanos) throws InterruptedException {
+        PersistenceManager pm = PersistenceManager.getInstance();
+        LongAdder operations = new LongAdder();
+        long started = System.nanoTime();
+        long deadline = started + durationNanos;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int firstPage = 10 + t * PAGES_PER_THREAD;
+            workers[t] = new Thread(() -> {
+                int next = 0;
+                while (System.nanoTime() < deadline) {
+                    int taid = pm.beginTransaction();
+                    for (int w = 0; w < writesPerTransaction; w++) {
+                        pm.write(taid, firstPage + next, DATA);
+                        next = (next + 1) % PAGES_PER_THREAD;
+                    }
+                    pm.commit(taid);
+                    operations.add(writesPerTransaction);
+                }
+            }, name + "-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1e9 / (System.nanoTime() - started);
+    }
+}
@@ -1,10 +1,16 @@
 package hamburg.dbis.client;
 
+import hamburg.dbis.persistence.DeadlockException;
 import hamburg.dbis.persistence.PersistenceManager;
+import hamburg.dbis.utils.LatencyHistogram;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class Client extends Thread {
+/**
+ * Runs one transaction with the operations of its schedule. Clients are plain tasks,
+ * so the {@link ClientManager} can run many of them on few (or virtual) threads.
+ */
+public class Client implements Runnable {
 
     private final int _clientID;
     private final int _minSleepTimer;
@@ -12,11 +18,12 @@ public class Client extends Thread {
 
     private final Schedule _schedule;
 
-    private Random _rnd;
-
     private boolean _showDebug = false;
     private PersistenceManager _pm;
 
+    private LatencyHistogram _writeLatency;
+    private LatencyHistogram _commitLatency;
+
     public Client(int clientID, Schedule schedule) {
         this(clientID, schedule, 1000, 2500);
     }
@@ -27,7 +34,6 @@ public class Client extends Thread {
         _maxSleepTimer = maxSleepTimer;
         _schedule = schedule;
 
-        _rnd = new Random();
         _pm = PersistenceManager.getInstance();
     }
 
@@ -35,6 +41,14 @@ public class Client extends Thread {
         _showDebug = !_showDebug;
     }
 
+    /**
+     * Records how long each write and the commit take, either may be null.
+     */
+    public void setLatencyHistograms(LatencyHistogram writeLatency, LatencyHistogram commitLatency) {
+        _writeLatency = writeLatency;
+        _commitLatency = commitLatency;
+    }
+
 
     @Override
     public void run() {
@@ -42,23 +56,60 @@ public class Client extends Thread {
         if (_showDebug)
             System.out.println("[Debug - Client " + _clientID + "]    Attempting to begin Transaction");
         int taid = _pm.beginTransaction();
+        try {
+            runTransaction(taid);
+        } catch (RuntimeException e) {
+            // e.g. no buffer frame, an interrupt or an I/O error: the transaction must not
+            // keep its locks, and the client goes on with its next transaction
+            System.out.println("[Client " + _clientID + "]    " + e + ", transaction " + taid + " aborted");
+            if (_pm.isActive(taid)) {
+                try {
+                    _pm.abort(taid);
+                } catch (RuntimeException abortFailure) {
+                    abortFailure.printStackTrace();
+                }
+            }
+        }
+    }
 
+    private void runTransaction(int taid) {
         for (Operation op : _schedule) {
 
             if (_showDebug)
                 System.out.println("[Debug - Client " + _clientID + "]    Attempting " + op.toString());
-            _pm.write(taid, op.getPage(), op.getData());
+            try {
+                long started = System.nanoTime();
+                _pm.write(taid, op.getPage(), op.getData());
+                if (_writeLatency != null)
+                    _writeLatency.record(System.nanoTime() - started);
+            } catch (DeadlockException e) {
+                // the transaction has already been rolled back
+                if (_showDebug)
+                    System.out.println("[Client " + _clientID + "]    " + e.getMessage() + ", transaction " + taid + " aborted");
+                return;
+            }
 
+            // think time, none if the maximum is 0
+            if (_maxSleepTimer <= 0)
+                continue;
             try {
-                Thread.sleep(_rnd.nextLong(_minSleepTimer, _maxSleepTimer + 1));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(_minSleepTimer, _maxSleepTimer + 1));
             } catch (InterruptedException e) {
+                if (_showDebug)
+                    System.out.println("[Debug - Client " + _clientID + "]    Interrupted, aborting");
+                // the rollback reads through file channels, which an interrupt would close
+                _pm.abort(taid);
+                Thread.currentThread().interrupt();
                 return;
             }
         }
 
         if (_showDebug)
             System.out.println("[Debug - Client " + _clientID + "]    Attempting Commit");
+        long started = System.nanoTime();
         _pm.commit(taid);
+        if (_commitLatency != null)
+            _commitLatency.record(System.nanoTime() - started);
     }
 
 }
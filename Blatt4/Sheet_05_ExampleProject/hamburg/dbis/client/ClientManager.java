@@ -1,11 +1,58 @@
 package hamburg.dbis.client;
 
+import hamburg.dbis.persistence.PersistenceManager;
 import hamburg.dbis.utils.DataLoader;
-import hamburg.dbis.utils.RandomHashSet;
+import hamburg.dbis.utils.LatencyHistogram;
+import hamburg.dbis.utils.SamplePool;
+
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Load driver. Without any settings it behaves like the original exercise: 3 clients
+ * run one transaction each with 1-6 writes on their own 20 pages and 100-2000 ms think
+ * time. Everything can be changed with system properties:
+ *
+ * <pre>
+ * dbis.load.clients         number of clients (3)
+ * dbis.load.pagesPerClient  pages per client (20)
+ * dbis.load.sharedPages     all clients write the same pages instead of their own (false)
+ * dbis.load.keys            how pages are chosen: uniform, zipfian, hotspot or latest (uniform),
+ *                           see {@link KeyGenerator#create(String, int, int)}
+ * dbis.load.minWrites       writes per transaction, at least (1)
+ * dbis.load.maxWrites       writes per transaction, at most (6)
+ * dbis.load.thinkMinMs      think time after each write, at least (100)
+ * dbis.load.thinkMaxMs      think time after each write, at most, 0 turns it off (2000)
+ * dbis.load.openLoop        start transactions at a fixed rate instead of when a client is done (false)
+ * dbis.load.rate            transactions per second in the open loop (100)
+ * dbis.load.transactions    transactions per client, in the open loop in total, 0 for no limit (1)
+ * dbis.load.durationMs      stop starting transactions after this time, 0 for no limit (0)
+ * dbis.load.virtualThreads  run clients on virtual threads where the JVM has them (true)
+ * dbis.load.debug           print what each client does (true)
+ * </pre>
+ *
+ * At the end the throughput and the write and commit latencies are printed.
+ */
 public class ClientManager {
 
+    static int CLIENTS = Integer.getInteger("dbis.load.clients", 3);
+    static int PAGES_PER_CLIENT = Integer.getInteger("dbis.load.pagesPerClient", 20);
+    static boolean SHARED_PAGES = Boolean.getBoolean("dbis.load.sharedPages");
+    static String KEYS = System.getProperty("dbis.load.keys", "uniform");
+    static int MIN_WRITES = Integer.getInteger("dbis.load.minWrites", 1);
+    static int MAX_WRITES = Integer.getInteger("dbis.load.maxWrites", 6);
+    static int THINK_MIN_MS = Integer.getInteger("dbis.load.thinkMinMs", 100);
+    static int THINK_MAX_MS = Integer.getInteger("dbis.load.thinkMaxMs", 2000);
+    static boolean OPEN_LOOP = Boolean.getBoolean("dbis.load.openLoop");
+    static double RATE = Double.parseDouble(System.getProperty("dbis.load.rate", "100"));
+    static long TRANSACTIONS = Long.getLong("dbis.load.transactions", 1);
+    static long DURATION_MS = Long.getLong("dbis.load.durationMs", 0);
+    static boolean VIRTUAL_THREADS = Boolean.parseBoolean(System.getProperty("dbis.load.virtualThreads", "true"));
+    static boolean DEBUG = Boolean.parseBoolean(System.getProperty("dbis.load.debug", "true"));
+
     Random rnd = new Random();
     static final private ClientManager _manager;
     static {
@@ -19,27 +66,103 @@ public class ClientManager {
     static public ClientManager getInstance() { return _manager; }
     public int nextInt(int a, int b) { return a + rnd.nextInt(b - a); }
 
+    private SamplePool<String> exampleData;
+    // by client id - 1, all the same with shared pages
+    private KeyGenerator[] keyGenerators;
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    /**
+     * Runs the configured load and returns when all transactions have finished.
+     */
     public void startClients() {
-        int totalClients = 3;
-        int pagesPerClient = 20;
+        exampleData = DataLoader.loadExampleData();
+        keyGenerators = new KeyGenerator[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            if (SHARED_PAGES) {
+                keyGenerators[c] = c == 0 ? KeyGenerator.create(KEYS, 10, 10 + CLIENTS * PAGES_PER_CLIENT)
+                        : keyGenerators[0];
+            } else {
+                int minPage = 10 + c * PAGES_PER_CLIENT;
+                keyGenerators[c] = KeyGenerator.create(KEYS, minPage, minPage + PAGES_PER_CLIENT);
+            }
+        }
+        ExecutorService executor = newExecutor();
 
-        RandomHashSet<String> exampleData = DataLoader.loadExampleData();
-        int clientid = 1;
+        long started = System.nanoTime();
+        long deadline = DURATION_MS > 0 ? started + DURATION_MS * 1_000_000L : Long.MAX_VALUE;
 
-        for (int c = 0; c < totalClients; c++) {
-            int minPage = 10 + c * pagesPerClient;
-            int maxPage = minPage + pagesPerClient; 
+        if (OPEN_LOOP) {
+            // arrivals do not wait for earlier transactions to finish
+            long interval = (long) (1e9 / RATE);
+            for (long i = 0; TRANSACTIONS <= 0 || i < TRANSACTIONS; i++) {
+                long due = started + i * interval;
+                if (due > deadline) {
+                    break;
+                }
+                long delay = due - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                executor.execute(createClient((int) (i % CLIENTS) + 1));
+            }
+        } else {
+            for (int c = 0; c < CLIENTS; c++) {
+                int clientid = c + 1;
+                executor.execute(() -> {
+                    for (long k = 0; (TRANSACTIONS <= 0 || k < TRANSACTIONS) && System.nanoTime() < deadline; k++) {
+                        createClient(clientid).run();
+                    }
+                });
+            }
+        }
 
-            Schedule schedule = Schedule.createSchedule();
-            for (int w = 0; w < 1 + new Random().nextInt(6); w++) {
-                int page = nextInt(minPage, maxPage);
-                String data = exampleData.getRandomElement();
-                schedule.addOperation(page, data);
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting, transactions end on their own
             }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        printResults(System.nanoTime() - started);
+    }
+
+    private Client createClient(int clientid) {
+        int writes = MIN_WRITES + rnd.nextInt(Math.max(1, MAX_WRITES - MIN_WRITES + 1));
+        Schedule schedule = Schedule.createSchedule()
+                .addOperations(writes, keyGenerators[clientid - 1], exampleData::getRandomElement);
+
+        Client client = new Client(clientid, schedule, THINK_MIN_MS, THINK_MAX_MS);
+        client.setLatencyHistograms(writeLatency, commitLatency);
+        if (DEBUG)
+            client.toggleClientDebugMessages();
+        return client;
+    }
 
-            Client client = new Client(clientid++, schedule, 100, 2000);
-            client.toggleClientDebugMessages(); 
-            client.start();
+    // virtual threads where the JVM has them (Java 21 and later), a thread per client otherwise
+    private static ExecutorService newExecutor() {
+        if (VIRTUAL_THREADS) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // not available in this JVM
+            }
         }
+        return Executors.newCachedThreadPool();
+    }
+
+    private void printResults(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long committed = commitLatency.getCount();
+        PersistenceManager pm = PersistenceManager.getInstance();
+        System.out.printf("Load: %d clients, %s loop, %s keys, %d transactions committed in %.1f s, %.1f tx/s, %.1f writes/s%n",
+                CLIENTS, OPEN_LOOP ? "open" : "closed", KEYS, committed, seconds, committed / seconds,
+                writeLatency.getCount() / seconds);
+        System.out.println("Write latency:  " + writeLatency.getSummary());
+        System.out.println("Commit latency: " + commitLatency.getSummary());
+        System.out.println("Lock waits: " + pm.getLockWaits() + ", deadlocks: " + pm.getDeadlocks()
+                + ", buffer: " + pm.getBufferStatistics());
     }
-}
\ No newline at end of file
+}
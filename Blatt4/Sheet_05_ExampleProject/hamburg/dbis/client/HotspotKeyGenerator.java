@@ -0,0 +1,42 @@
+package hamburg.dbis.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A share of the operations goes to a hot set at the start of the page range, the rest
+ * to the other pages, both uniformly. E.g. 80% of the operations on 20% of the pages.
+ */
+public class HotspotKeyGenerator implements KeyGenerator {
+
+    private final int minPage;
+    private final int maxPage;
+    private final int hotEnd;
+    private final double hotOpFraction;
+
+    /**
+     * @param hotPageFraction share of the pages that are hot
+     * @param hotOpFraction   share of the operations on hot pages
+     */
+    public HotspotKeyGenerator(int minPage, int maxPage, double hotPageFraction, double hotOpFraction) {
+        if (maxPage <= minPage) {
+            throw new IllegalArgumentException("Empty page range: " + minPage + " .. " + maxPage);
+        }
+        if (hotPageFraction < 0 || hotPageFraction > 1 || hotOpFraction < 0 || hotOpFraction > 1) {
+            throw new IllegalArgumentException("Hotspot fractions must be between 0 and 1");
+        }
+        this.minPage = minPage;
+        this.maxPage = maxPage;
+        int hotPages = (int) Math.ceil((maxPage - minPage) * hotPageFraction);
+        this.hotEnd = minPage + Math.max(1, Math.min(hotPages, maxPage - minPage));
+        this.hotOpFraction = hotOpFraction;
+    }
+
+    @Override
+    public int nextPage() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (hotEnd == maxPage || rnd.nextDouble() < hotOpFraction) {
+            return rnd.nextInt(minPage, hotEnd);
+        }
+        return rnd.nextInt(hotEnd, maxPage);
+    }
+}
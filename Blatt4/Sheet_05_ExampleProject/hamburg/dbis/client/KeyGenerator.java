@@ -0,0 +1,40 @@
+package hamburg.dbis.client;
+
+/**
+ * Chooses the pages a workload writes. Implementations are thread-safe, so one
+ * generator can feed any number of clients.
+ */
+public interface KeyGenerator {
+
+    /**
+     * @return a page id between the generator's minimum (inclusive) and maximum (exclusive)
+     */
+    int nextPage();
+
+    /**
+     * Creates a generator over the pages {@code minPage .. maxPage - 1} by name:
+     * {@code uniform}, {@code zipfian} (theta from {@code dbis.load.zipfTheta}, 0.99),
+     * {@code hotspot} ({@code dbis.load.hotspotOps} of the operations, 0.8, on the first
+     * {@code dbis.load.hotspotPages} of the pages, 0.2) or {@code latest}
+     * ({@code dbis.load.latestNewFraction} of the operations write a new page, 0.05).
+     */
+    static KeyGenerator create(String name, int minPage, int maxPage) {
+        switch (name) {
+            case "uniform":
+                return new UniformKeyGenerator(minPage, maxPage);
+            case "zipfian":
+                return new ZipfianKeyGenerator(minPage, maxPage,
+                        Double.parseDouble(System.getProperty("dbis.load.zipfTheta", "0.99")));
+            case "hotspot":
+                return new HotspotKeyGenerator(minPage, maxPage,
+                        Double.parseDouble(System.getProperty("dbis.load.hotspotPages", "0.2")),
+                        Double.parseDouble(System.getProperty("dbis.load.hotspotOps", "0.8")));
+            case "latest":
+                return new LatestKeyGenerator(minPage, maxPage,
+                        Double.parseDouble(System.getProperty("dbis.load.zipfTheta", "0.99")),
+                        Double.parseDouble(System.getProperty("dbis.load.latestNewFraction", "0.05")));
+            default:
+                throw new IllegalArgumentException("Unknown key distribution: " + name);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package hamburg.dbis.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Favours the pages written last. The workload appends pages in ascending order: a
+ * share of the operations writes the next new page, the others pick a recent page
+ * with a Zipfian distribution over the distance to the newest one. After the end of
+ * the range, appending wraps around to its start.
+ */
+public class LatestKeyGenerator implements KeyGenerator {
+
+    private final int minPage;
+    private final int items;
+    private final double newFraction;
+    private final ZipfianKeyGenerator distance;
+    private final AtomicInteger newest = new AtomicInteger();
+
+    /**
+     * @param newFraction share of the operations that write a new page
+     */
+    public LatestKeyGenerator(int minPage, int maxPage, double theta, double newFraction) {
+        if (newFraction < 0 || newFraction > 1) {
+            throw new IllegalArgumentException("Share of new pages must be between 0 and 1: " + newFraction);
+        }
+        this.minPage = minPage;
+        this.items = maxPage - minPage;
+        this.newFraction = newFraction;
+        this.distance = new ZipfianKeyGenerator(0, items, theta);
+    }
+
+    @Override
+    public int nextPage() {
+        if (ThreadLocalRandom.current().nextDouble() < newFraction) {
+            return minPage + Math.floorMod(newest.incrementAndGet(), items);
+        }
+        return minPage + Math.floorMod(newest.get() - distance.nextRank(), items);
+    }
+}
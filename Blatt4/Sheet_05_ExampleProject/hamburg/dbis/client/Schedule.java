@@ -2,6 +2,7 @@ package hamburg.dbis.client;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.function.Supplier;
 
 public class Schedule implements Iterable<Operation> {
 
@@ -24,4 +25,14 @@ public class Schedule implements Iterable<Operation> {
         _schedule.add(new Operation(page, data));
         return this;
     }
+
+    /**
+     * Adds {@code count} writes of {@code data} on pages chosen by {@code keys}.
+     */
+    public Schedule addOperations(int count, KeyGenerator keys, Supplier<String> data) {
+        for (int i = 0; i < count; i++) {
+            addOperation(keys.nextPage(), data.get());
+        }
+        return this;
+    }
 }
@@ -0,0 +1,25 @@
+package hamburg.dbis.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Every page is equally likely.
+ */
+public class UniformKeyGenerator implements KeyGenerator {
+
+    private final int minPage;
+    private final int maxPage;
+
+    public UniformKeyGenerator(int minPage, int maxPage) {
+        if (maxPage <= minPage) {
+            throw new IllegalArgumentException("Empty page range: " + minPage + " .. " + maxPage);
+        }
+        this.minPage = minPage;
+        this.maxPage = maxPage;
+    }
+
+    @Override
+    public int nextPage() {
+        return ThreadLocalRandom.current().nextInt(minPage, maxPage);
+    }
+}
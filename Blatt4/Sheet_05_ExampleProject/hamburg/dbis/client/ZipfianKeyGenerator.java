@@ -0,0 +1,64 @@
+package hamburg.dbis.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipfian distribution over the page range: the page at rank {@code i} (starting with
+ * {@code minPage}) is chosen with a probability proportional to {@code 1 / (i + 1)^theta}.
+ * Uses the constant-time method of Gray et al., "Quickly Generating Billion-Record
+ * Synthetic Databases"; only the constructor is linear in the number of pages.
+ */
+public class ZipfianKeyGenerator implements KeyGenerator {
+
+    private final int minPage;
+    private final int items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    public ZipfianKeyGenerator(int minPage, int maxPage, double theta) {
+        if (maxPage <= minPage) {
+            throw new IllegalArgumentException("Empty page range: " + minPage + " .. " + maxPage);
+        }
+        if (!(theta > 0 && theta < 1)) {
+            throw new IllegalArgumentException("Zipfian theta must be between 0 and 1: " + theta);
+        }
+        this.minPage = minPage;
+        this.items = maxPage - minPage;
+        this.theta = theta;
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        double zeta2 = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    @Override
+    public int nextPage() {
+        return minPage + nextRank();
+    }
+
+    /**
+     * @return 0 for the most popular item, up to the number of pages - 1
+     */
+    int nextRank() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetan;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < 1 + Math.pow(0.5, theta)) {
+            return Math.min(1, items - 1);
+        }
+        int rank = (int) (items * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(rank, items - 1);
+    }
+}
@@ -0,0 +1,171 @@
+package hamburg.dbis.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Payload of the END_CHECKPOINT records: the active transaction table and the dirty
+ * page table as they were when the matching BEGIN_CHECKPOINT was written. Tables that
+ * do not fit into one log record are split over several, each one telling how many follow.
+ */
+public class CheckpointData {
+
+    public static final byte ACTIVE = 1;
+
+    // beginLSN, nextTransactionID, parts following, and the two table sizes
+    private static final int FIXED_SIZE = 8 + 4 + 4 + 4 + 4;
+    private static final int REMAINING_OFFSET = 8 + 4;
+    private static final int ATT_ENTRY_SIZE = 4 + 1 + 8;
+    private static final int DPT_ENTRY_SIZE = 4 + 8;
+    private static final int MAX_DATA_SIZE = LogRecord.MAX_RECORD_SIZE - LogRecord.HEADER_SIZE - LogRecord.TRAILER_SIZE;
+
+    public final long beginLSN;
+    public final int nextTransactionID;
+
+    // active transaction table
+    public final int[] taids;
+    public final byte[] states;
+    public final long[] firstLSNs;
+
+    // dirty page table: page => LSN of the first update since it was last written
+    public final int[] pageids;
+    public final long[] recLSNs;
+
+    public CheckpointData(long beginLSN, int nextTransactionID, int[] taids, byte[] states, long[] firstLSNs,
+                          int[] pageids, long[] recLSNs) {
+        this.beginLSN = beginLSN;
+        this.nextTransactionID = nextTransactionID;
+        this.taids = taids;
+        this.states = states;
+        this.firstLSNs = firstLSNs;
+        this.pageids = pageids;
+        this.recLSNs = recLSNs;
+    }
+
+    /**
+     * Smallest LSN a restart has to look at: the checkpoint itself, the oldest update of
+     * a dirty page or the first record of a transaction that was still running.
+     */
+    public long redoStartLSN() {
+        long start = beginLSN;
+        for (long lsn : recLSNs) {
+            start = Math.min(start, lsn);
+        }
+        for (long lsn : firstLSNs) {
+            start = Math.min(start, lsn);
+        }
+        return start;
+    }
+
+    /**
+     * Encodes the checkpoint into the payloads of one or more END_CHECKPOINT records,
+     * none of them larger than a log record may be.
+     */
+    public List<byte[]> encode() {
+        List<int[]> slices = new ArrayList<>();
+        int a = 0;
+        int d = 0;
+        do {
+            int room = MAX_DATA_SIZE - FIXED_SIZE;
+            int na = Math.min(taids.length - a, room / ATT_ENTRY_SIZE);
+            room -= na * ATT_ENTRY_SIZE;
+            int nd = Math.min(pageids.length - d, room / DPT_ENTRY_SIZE);
+            slices.add(new int[]{a, na, d, nd});
+            a += na;
+            d += nd;
+        } while (a < taids.length || d < pageids.length);
+
+        List<byte[]> parts = new ArrayList<>(slices.size());
+        for (int[] slice : slices) {
+            ByteBuffer buf = ByteBuffer.allocate(FIXED_SIZE + slice[1] * ATT_ENTRY_SIZE + slice[3] * DPT_ENTRY_SIZE);
+            buf.putLong(beginLSN);
+            buf.putInt(nextTransactionID);
+            buf.putInt(slices.size() - 1 - parts.size());
+            buf.putInt(slice[1]);
+            for (int i = slice[0]; i < slice[0] + slice[1]; i++) {
+                buf.putInt(taids[i]).put(states[i]).putLong(firstLSNs[i]);
+            }
+            buf.putInt(slice[3]);
+            for (int i = slice[2]; i < slice[2] + slice[3]; i++) {
+                buf.putInt(pageids[i]).putLong(recLSNs[i]);
+            }
+            parts.add(buf.array());
+        }
+        return parts;
+    }
+
+    /**
+     * Decodes the payload of a single END_CHECKPOINT record.
+     */
+    public static CheckpointData decode(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long beginLSN = buf.getLong();
+        int nextTransactionID = buf.getInt();
+        buf.getInt();
+        int n = buf.getInt();
+        int[] taids = new int[n];
+        byte[] states = new byte[n];
+        long[] firstLSNs = new long[n];
+        for (int i = 0; i < n; i++) {
+            taids[i] = buf.getInt();
+            states[i] = buf.get();
+            firstLSNs[i] = buf.getLong();
+        }
+        int m = buf.getInt();
+        int[] pageids = new int[m];
+        long[] recLSNs = new long[m];
+        for (int i = 0; i < m; i++) {
+            pageids[i] = buf.getInt();
+            recLSNs[i] = buf.getLong();
+        }
+        return new CheckpointData(beginLSN, nextTransactionID, taids, states, firstLSNs, pageids, recLSNs);
+    }
+
+    private CheckpointData merge(CheckpointData next) {
+        int n = taids.length;
+        int m = pageids.length;
+        int[] taids = Arrays.copyOf(this.taids, n + next.taids.length);
+        byte[] states = Arrays.copyOf(this.states, n + next.states.length);
+        long[] firstLSNs = Arrays.copyOf(this.firstLSNs, n + next.firstLSNs.length);
+        int[] pageids = Arrays.copyOf(this.pageids, m + next.pageids.length);
+        long[] recLSNs = Arrays.copyOf(this.recLSNs, m + next.recLSNs.length);
+        System.arraycopy(next.taids, 0, taids, n, next.taids.length);
+        System.arraycopy(next.states, 0, states, n, next.states.length);
+        System.arraycopy(next.firstLSNs, 0, firstLSNs, n, next.firstLSNs.length);
+        System.arraycopy(next.pageids, 0, pageids, m, next.pageids.length);
+        System.arraycopy(next.recLSNs, 0, recLSNs, m, next.recLSNs.length);
+        return new CheckpointData(beginLSN, nextTransactionID, taids, states, firstLSNs, pageids, recLSNs);
+    }
+
+    /**
+     * Reads the last complete checkpoint of the log in {@code dir}, or null if there is none.
+     */
+    public static CheckpointData readLast(File dir) throws IOException {
+        ControlFile control = ControlFile.read(dir);
+        if (control == null || control.checkpointLSN <= 0) {
+            return null;
+        }
+        long beginLSN = control.checkpointLSN;
+        CheckpointData checkpoint = null;
+        try (LogReader reader = new LogReader(dir, beginLSN, Long.MAX_VALUE)) {
+            while (reader.next()) {
+                if (reader.type() == LogRecord.END_CHECKPOINT) {
+                    byte[] data = new byte[reader.dataLength()];
+                    reader.copyData(data);
+                    CheckpointData part = decode(data);
+                    if (part.beginLSN == beginLSN) {
+                        checkpoint = checkpoint == null ? part : checkpoint.merge(part);
+                        if (ByteBuffer.wrap(data).getInt(REMAINING_OFFSET) == 0) {
+                            return checkpoint;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package hamburg.dbis.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Small file next to the log segments that points at the BEGIN_CHECKPOINT record of
+ * the last complete checkpoint and remembers where the log ended when it was written:
+ *
+ * <pre>
+ * long checkpointLSN   BEGIN_CHECKPOINT of the last complete checkpoint, 0 if none
+ * long lastLSN         last record on disk
+ * int  lastTaid        highest taid of all records up to lastLSN
+ * long tailSegment     first LSN of the segment holding lastLSN
+ * int  tailOffset      offset behind lastLSN in that segment
+ * int  crc32c
+ * </pre>
+ *
+ * The {@link LogWriter} rewrites it on every checkpoint and segment roll, so on
+ * startup only the records behind the tail have to be read. It is replaced
+ * atomically, so a crash leaves either the old or the new file.
+ */
+public final class ControlFile {
+
+    static final String FILE_NAME = "control";
+    private static final int SIZE = 8 + 8 + 4 + 8 + 4;
+
+    public final long checkpointLSN;
+    public final long lastLSN;
+    public final int lastTaid;
+    public final long tailSegment;
+    public final int tailOffset;
+
+    ControlFile(long checkpointLSN, long lastLSN, int lastTaid, long tailSegment, int tailOffset) {
+        this.checkpointLSN = checkpointLSN;
+        this.lastLSN = lastLSN;
+        this.lastTaid = lastTaid;
+        this.tailSegment = tailSegment;
+        this.tailOffset = tailOffset;
+    }
+
+    /**
+     * @return the control file in {@code dir}, null if there is none or it is damaged
+     */
+    public static ControlFile read(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buf.remaining() < SIZE + 4) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, SIZE);
+        if ((int) crc.getValue() != buf.getInt(SIZE)) {
+            return null;
+        }
+        return new ControlFile(buf.getLong(), buf.getLong(), buf.getInt(), buf.getLong(), buf.getInt());
+    }
+
+    static void write(File dir, ControlFile control) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SIZE + 4);
+        buf.putLong(control.checkpointLSN);
+        buf.putLong(control.lastLSN);
+        buf.putInt(control.lastTaid);
+        buf.putLong(control.tailSegment);
+        buf.putInt(control.tailOffset);
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, SIZE);
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), new File(dir, FILE_NAME).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        // the rename is only durable once the directory is
+        forceDirectory(dir);
+    }
+
+    // makes renames and new files in 'dir' durable; Windows cannot open a directory as a
+    // channel, and does not need to
+    static void forceDirectory(File dir) throws IOException {
+        if (System.getProperty("os.name", "").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package hamburg.dbis.log;
+
+/**
+ * When a commit counts as durable, chosen when the log is opened. The modes trade
+ * commit latency against throughput and, for {@link #ASYNC}, against the commits a
+ * crash may lose.
+ */
+public enum Durability {
+
+    /**
+     * Every commit waits for a force that starts as soon as its record is buffered,
+     * without waiting for others to join.
+     */
+    STRICT,
+
+    /**
+     * Every commit waits for a force; records arriving within the group window share it.
+     */
+    GROUP,
+
+    /**
+     * Commits do not wait. The log is forced in the background at the latest one window
+     * after a record was buffered, so a crash loses at most the commits of about that
+     * window.
+     */
+    ASYNC,
+
+    /**
+     * Like {@link #GROUP}, but segments are written through a channel opened with
+     * {@code O_DSYNC} instead of a memory mapping that is forced afterwards: one
+     * synchronous write per group.
+     */
+    DSYNC;
+
+    /**
+     * @return true if a commit has to wait until its record is durable
+     */
+    public boolean commitWaits() {
+        return this != ASYNC;
+    }
+
+    public static Durability parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown durability: " + name);
+        }
+    }
+}
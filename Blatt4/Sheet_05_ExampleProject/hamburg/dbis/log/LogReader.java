@@ -0,0 +1,188 @@
+package hamburg.dbis.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Sequential reader for the segmented log. The reader is a cursor: {@link #next()}
+ * moves to the following record and the accessors return its fields straight from
+ * the mapped segment, so iterating does not allocate. Only {@link #data()} creates a
+ * String.
+ *
+ * Only the segments overlapping the requested LSN range are opened. Inside a segment
+ * reading stops at the first empty, truncated or corrupt record.
+ */
+public class LogReader implements AutoCloseable {
+
+    private final List<File> segments;
+    private final long fromLSN;
+    private final long toLSN;
+    private final CRC32C crc = new CRC32C();
+
+    private int segmentIndex;
+    private ByteBuffer buf;
+    private int recordStart = -1;
+    private int recordLength;
+    private int position;
+    private boolean done = false;
+    private int startOffset = 0;  // where reading starts in the first segment
+
+    /**
+     * Reads the whole log in {@code dir}.
+     */
+    public LogReader(File dir) {
+        this(dir, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the records with {@code fromLSN <= lsn <= toLSN}.
+     */
+    public LogReader(File dir, long fromLSN, long toLSN) {
+        this.segments = LogSegment.list(dir);
+        this.fromLSN = fromLSN;
+        this.toLSN = toLSN;
+
+        // start with the last segment that begins at or before fromLSN
+        segmentIndex = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (LogSegment.firstLSN(segments.get(i)) <= fromLSN) {
+                segmentIndex = i;
+            }
+        }
+        segmentIndex--;
+    }
+
+    /**
+     * Reads everything behind offset {@code offset} of the segment that starts with
+     * {@code segmentFirstLSN}, e.g. from a tail recorded in the {@link ControlFile}.
+     */
+    static LogReader fromOffset(File dir, long segmentFirstLSN, int offset) {
+        LogReader reader = new LogReader(dir, segmentFirstLSN, Long.MAX_VALUE);
+        reader.startOffset = offset;
+        return reader;
+    }
+
+    /**
+     * Advances to the next intact record in the requested range.
+     *
+     * @return false at the end of the range or of the log
+     */
+    public boolean next() throws IOException {
+        while (!done) {
+            if (buf == null || !readRecord()) {
+                if (!openNextSegment()) {
+                    done = true;
+                    break;
+                }
+                continue;
+            }
+            long lsn = lsn();
+            if (lsn > toLSN) {
+                done = true;
+                break;
+            }
+            if (lsn >= fromLSN) {
+                return true;
+            }
+        }
+        recordStart = -1;
+        return false;
+    }
+
+    private boolean readRecord() {
+        if (recordStart >= 0) {
+            position = recordStart + recordLength;
+        }
+        recordStart = -1;
+        if (buf.capacity() - position < 4) {
+            return false;
+        }
+        int length = buf.getInt(position);
+        if (length < LogRecord.HEADER_SIZE + LogRecord.TRAILER_SIZE || length > buf.capacity() - position) {
+            return false;
+        }
+        int stored = buf.getInt(position + length - LogRecord.TRAILER_SIZE);
+        if (LogRecord.checksum(buf, crc, position, length) != stored) {
+            return false;
+        }
+        recordStart = position;
+        recordLength = length;
+        return true;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        int next = segmentIndex + 1;
+        if (next >= segments.size() || LogSegment.firstLSN(segments.get(next)) > toLSN) {
+            return false;
+        }
+        segmentIndex = next;
+        recordStart = -1;
+        position = startOffset;
+        startOffset = 0;
+        try (FileChannel channel = FileChannel.open(segments.get(next).toPath(), StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return true;
+    }
+
+    public byte type() {
+        return buf.get(recordStart + LogRecord.TYPE_OFFSET);
+    }
+
+    public long lsn() {
+        return buf.getLong(recordStart + LogRecord.LSN_OFFSET);
+    }
+
+    public int taid() {
+        return buf.getInt(recordStart + LogRecord.TAID_OFFSET);
+    }
+
+    public int pageid() {
+        return buf.getInt(recordStart + LogRecord.PAGEID_OFFSET);
+    }
+
+    public int dataLength() {
+        return recordLength - LogRecord.HEADER_SIZE - LogRecord.TRAILER_SIZE;
+    }
+
+    /**
+     * Copies the data bytes of the current record into {@code dst} and returns their count.
+     */
+    public int copyData(byte[] dst) {
+        int len = dataLength();
+        buf.get(recordStart + LogRecord.HEADER_SIZE, dst, 0, len);
+        return len;
+    }
+
+    public String data() {
+        byte[] bytes = new byte[dataLength()];
+        copyData(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Segment file the current record (or, after the end, the last record) was read from.
+     */
+    public File segment() {
+        return segmentIndex < 0 ? null : segments.get(segmentIndex);
+    }
+
+    /**
+     * Offset directly behind the current record inside its segment.
+     */
+    public int segmentOffset() {
+        return recordStart >= 0 ? recordStart + recordLength : position;
+    }
+
+    @Override
+    public void close() {
+        buf = null;
+        done = true;
+    }
+}
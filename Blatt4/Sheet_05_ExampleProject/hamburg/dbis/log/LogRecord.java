@@ -0,0 +1,137 @@
+package hamburg.dbis.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of a log record:
+ *
+ * <pre>
+ * int  length   total record size including this field and the checksum
+ * byte type
+ * long lsn
+ * int  taid
+ * int  pageid   -1 if the record does not refer to a page
+ * byte[] data   length - HEADER_SIZE - TRAILER_SIZE bytes
+ * int  crc32c   over type .. data
+ * </pre>
+ *
+ * The data of an UPDATE holds the page before and after the change, that of a
+ * COMPENSATION the LSN of the undone update and the restored page:
+ *
+ * <pre>
+ * UPDATE        int beforeLength, before image, after image   (UTF-8)
+ * COMPENSATION  long undoneLSN, restored image                (UTF-8)
+ * </pre>
+ */
+public final class LogRecord {
+
+    public static final byte UPDATE = 1;
+    public static final byte COMMIT = 2;
+    public static final byte BEGIN_CHECKPOINT = 3;
+    public static final byte END_CHECKPOINT = 4;
+    // written when an update of a rolled back transaction is undone
+    public static final byte COMPENSATION = 5;
+    // last record of a rolled back transaction
+    public static final byte ABORT = 6;
+
+    public static final int HEADER_SIZE = 4 + 1 + 8 + 4 + 4;
+    public static final int TRAILER_SIZE = 4;
+    public static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    static final int TYPE_OFFSET = 4;
+    static final int LSN_OFFSET = 5;
+    static final int TAID_OFFSET = 13;
+    static final int PAGEID_OFFSET = 17;
+
+    private LogRecord() {}
+
+    public static int size(byte[] data) {
+        return HEADER_SIZE + (data == null ? 0 : data.length) + TRAILER_SIZE;
+    }
+
+    /**
+     * Writes one record at the current position of {@code dst}, which must have
+     * at least {@link #size(byte[])} bytes remaining.
+     */
+    static void encode(ByteBuffer dst, CRC32C crc, byte type, long lsn, int taid, int pageid, byte[] data) {
+        int start = dst.position();
+        int length = size(data);
+        dst.putInt(length);
+        dst.put(type);
+        dst.putLong(lsn);
+        dst.putInt(taid);
+        dst.putInt(pageid);
+        if (data != null) {
+            dst.put(data);
+        }
+        dst.putInt(checksum(dst, crc, start, length));
+    }
+
+    public static byte[] updateData(String before, String after) {
+        byte[] b = before.getBytes(StandardCharsets.UTF_8);
+        byte[] a = after.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 + b.length + a.length).putInt(b.length).put(b).put(a).array();
+    }
+
+    public static byte[] compensationData(long undoneLSN, String image) {
+        byte[] i = image.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + i.length).putLong(undoneLSN).put(i).array();
+    }
+
+    /**
+     * @return the before image of an UPDATE
+     */
+    public static String beforeImage(byte[] data) {
+        int length = ByteBuffer.wrap(data).getInt(0);
+        return new String(data, 4, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the page content an UPDATE or COMPENSATION leaves behind
+     */
+    public static String redoImage(byte type, byte[] data) {
+        int start = type == COMPENSATION ? 8 : 4 + ByteBuffer.wrap(data).getInt(0);
+        return new String(data, start, data.length - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the LSN of the update a COMPENSATION undid
+     */
+    public static long undoneLSN(byte[] data) {
+        return ByteBuffer.wrap(data).getLong(0);
+    }
+
+    /**
+     * CRC32C over the record body (everything between the length field and the checksum).
+     */
+    static int checksum(ByteBuffer buf, CRC32C crc, int recordStart, int length) {
+        int pos = buf.position();
+        int lim = buf.limit();
+        buf.limit(recordStart + length - TRAILER_SIZE).position(recordStart + TYPE_OFFSET);
+        crc.reset();
+        crc.update(buf);
+        buf.limit(lim).position(pos);
+        return (int) crc.getValue();
+    }
+
+    public static String typeName(byte type) {
+        switch (type) {
+            case UPDATE:
+                return "UPDATE";
+            case COMMIT:
+                return "COMMIT";
+            case BEGIN_CHECKPOINT:
+                return "BEGIN_CHECKPOINT";
+            case END_CHECKPOINT:
+                return "END_CHECKPOINT";
+            case COMPENSATION:
+                return "COMPENSATION";
+            case ABORT:
+                return "ABORT";
+            default:
+                return "UNKNOWN(" + type + ")";
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package hamburg.dbis.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One fixed-size file of the write-ahead log, written through a {@link MappedByteBuffer}.
+ * The file is named after the LSN of its first record, so a segment can be found by
+ * LSN without opening it. Unused space at the end stays zero, a zero length field
+ * marks the end of the segment.
+ *
+ * A segment opened for {@link Durability#DSYNC} is not mapped. Its channel is opened
+ * with {@code O_DSYNC}, records are collected in memory and {@link #force()} writes
+ * them with one synchronous write.
+ */
+public class LogSegment {
+
+    static final String SUFFIX = ".seg";
+
+    private final long firstLSN;
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;  // null with O_DSYNC
+    private final int capacity;
+    private ByteBuffer staged;           // O_DSYNC: records not yet written
+    private int writePosition;
+    private int forcedPosition;
+
+    private LogSegment(long firstLSN, File file, FileChannel channel, MappedByteBuffer map, int capacity,
+                       int writePosition) {
+        this.firstLSN = firstLSN;
+        this.file = file;
+        this.channel = channel;
+        this.map = map;
+        this.capacity = capacity;
+        this.writePosition = writePosition;
+        this.forcedPosition = writePosition;
+        if (map == null) {
+            staged = ByteBuffer.allocateDirect(64 * 1024);
+        }
+    }
+
+    /**
+     * Creates a new empty segment. Its size and its directory entry are on disk when
+     * this returns, so records forced into it later cannot be lost with the file.
+     */
+    static LogSegment create(File dir, long firstLSN, int size, boolean dsync) throws IOException {
+        File file = new File(dir, fileName(firstLSN));
+        FileChannel channel = FileChannel.open(file.toPath(), openOptions(dsync, true));
+        MappedByteBuffer map = null;
+        if (dsync) {
+            // the full size up front, the unwritten rest reads as zeros
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        } else {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        channel.force(true);
+        ControlFile.forceDirectory(dir);
+        return new LogSegment(firstLSN, file, channel, map, size, 0);
+    }
+
+    private static StandardOpenOption[] openOptions(boolean dsync, boolean create) {
+        List<StandardOpenOption> options = new ArrayList<>(List.of(StandardOpenOption.READ, StandardOpenOption.WRITE));
+        if (create) {
+            options.add(StandardOpenOption.CREATE_NEW);
+        }
+        if (dsync) {
+            options.add(StandardOpenOption.DSYNC);
+        }
+        return options.toArray(new StandardOpenOption[0]);
+    }
+
+    /**
+     * Reopens an existing segment for appending at {@code validEnd}. Whatever lies behind
+     * that offset (a record torn by a crash) is zeroed so it cannot be mistaken for data.
+     */
+    static LogSegment reopen(File file, int validEnd, boolean dsync) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), openOptions(dsync, false));
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        for (int i = validEnd; i < map.capacity(); i++) {
+            if (map.get(i) != 0) {
+                map.put(i, (byte) 0);
+            }
+        }
+        map.force();
+        return new LogSegment(firstLSN(file), file, channel, dsync ? null : map, map.capacity(), validEnd);
+    }
+
+    long getFirstLSN() {
+        return firstLSN;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    // end of the records written so far
+    int position() {
+        return writePosition;
+    }
+
+    int remaining() {
+        return capacity - writePosition;
+    }
+
+    /**
+     * Copies {@code length} bytes starting at {@code src}'s position into the segment.
+     */
+    void put(ByteBuffer src, int length) {
+        if (map != null) {
+            map.put(writePosition, src, src.position(), length);
+        } else {
+            if (staged.remaining() < length) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(2 * staged.capacity(), staged.position() + length));
+                staged.flip();
+                bigger.put(staged);
+                staged = bigger;
+            }
+            staged.put(staged.position(), src, src.position(), length);
+            staged.position(staged.position() + length);
+        }
+        src.position(src.position() + length);
+        writePosition += length;
+    }
+
+    /**
+     * Forces everything written since the last call to disk.
+     */
+    void force() throws IOException {
+        if (writePosition > forcedPosition) {
+            if (map != null) {
+                map.force(forcedPosition, writePosition - forcedPosition);
+            } else {
+                staged.flip();
+                while (staged.hasRemaining()) {
+                    channel.write(staged, forcedPosition + staged.position());
+                }
+                staged.clear();
+            }
+            forcedPosition = writePosition;
+        }
+    }
+
+    void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    static String fileName(long firstLSN) {
+        return String.format("%020d%s", firstLSN, SUFFIX);
+    }
+
+    static long firstLSN(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * All segment files of a log directory, ordered by their first LSN.
+     */
+    public static List<File> list(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(firstLSN(a), firstLSN(b)));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+}
@@ -0,0 +1,555 @@
+package hamburg.dbis.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Group commit log writer. Appends from many threads are collected in in-memory
+ * rings and a single flusher thread copies each group into the current
+ * {@link LogSegment} and forces it once.
+ *
+ * There is one ring per stripe of appending threads ({@code stripes}, one per core by
+ * default), a fixed array of reusable slots ({@code ringSize} each, rounded up to a
+ * power of two). Threads are given their home stripe in turn, so with no more running
+ * threads than cores each has its own. A thread claims the next slot of its stripe together with the next
+ * LSN, which only holds a flag of the stripe for the two increments; if another thread
+ * has it, the append moves on to the next stripe instead of waiting. The record is then
+ * encoded into the slot's buffer and published by storing its LSN in the slot, so
+ * threads encode and checksum in parallel and only share the LSN counter. The slots of
+ * a stripe are in LSN order, so the flusher finds each next LSN at the head of one of
+ * the stripes and the log on disk is one ordered stream. A slot is free again once the
+ * flusher has copied it; when a ring is full, appends to it wait for that.
+ *
+ * The stripes only exist in memory. Recovery, rollbacks reading LSN ranges, checkpoints
+ * and segment deletion all rely on one log in LSN order, and there is a single flusher
+ * writing it anyway, so there are no per-stripe segments and no merge at replay.
+ *
+ * Records are written in the binary format described in {@link LogRecord}. The
+ * writer hands out the LSNs itself, so the order in the log is the LSN order. When a
+ * record does not fit into the current segment the writer rolls over to a new one.
+ *
+ * The writer also keeps the {@link ControlFile} up to date. It records the tail of
+ * the log on every segment roll and checkpoint, so opening the log only reads the
+ * records behind that tail, however long the log is.
+ */
+public class LogWriter {
+
+    private final File dir;
+    private final int segmentSize;
+    private final Durability durability;
+    private LogSegment segment; // only touched by the flusher (and the constructor)
+    // guards the durable state below, commits wait on it
+    private final Object lock = new Object();
+
+    private static class Slot {
+        // the encoded record, grown when a record does not fit and kept for the next one
+        ByteBuffer data = ByteBuffer.allocate(256);
+        long appendNanos;
+        // LSN of the record in 'data' once it is complete
+        volatile long published;
+    }
+
+    private static class Stripe {
+        final Slot[] ring;
+        final int mask;
+        // held while a slot and its LSN are claimed
+        final AtomicBoolean claiming = new AtomicBoolean();
+        long claimed;             // number of the last claimed slot, guarded by 'claiming'
+        volatile long released;   // number of the last slot the flusher has copied
+
+        Stripe(int size) {
+            ring = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                ring[i] = new Slot();
+            }
+            mask = size - 1;
+        }
+
+        // the oldest slot the flusher has not copied yet
+        Slot head() {
+            return ring[(int) (released + 1) & mask];
+        }
+    }
+
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<Integer> homeStripe;
+    private final int ringSize;
+    // the flusher waits on this for records
+    private final Object signal = new Object();
+    private volatile boolean flusherIdle;       // waits for the first record
+    private volatile boolean flusherGrouping;   // waits for the group window or a full batch
+
+    private final AtomicLong appended = new AtomicLong();   // highest LSN handed out so far
+    private volatile long durable;    // highest LSN that is on disk
+    private int durableTaid;      // highest taid of the durable records
+    private long tailSegment;     // first LSN of the segment behind 'durable'
+    private int tailOffset;       // end of the durable records in that segment
+    private volatile boolean closed = false;
+    // set when a group could not be written, nothing becomes durable after that
+    private volatile IOException failure;
+
+    private volatile long groupWindowNanos;
+    private volatile int maxBatchSize;
+
+    // statistics: how many records each force covered
+    private long forceCount = 0;
+    private long forcedRecords = 0;
+    private long forcedBytes = 0;
+    private int lastBatchSize = 0;
+    private int maxObservedBatchSize = 0;
+
+    private final Thread flusher;
+
+    // serializes control file updates, taken before 'lock'
+    private final Object controlLock = new Object();
+    private long checkpointLSN;
+
+    /**
+     * Opens the log in {@code dir} for {@link Durability#GROUP} commits.
+     */
+    public LogWriter(File dir, int segmentSize, long groupWindowMillis, int maxBatchSize) throws IOException {
+        this(dir, segmentSize, Durability.GROUP, groupWindowMillis, maxBatchSize,
+                Runtime.getRuntime().availableProcessors(),
+                defaultRingSize(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return ring size per stripe so that all rings together hold about 4096 records
+     */
+    public static int defaultRingSize(int stripes) {
+        return Math.max(256, 4096 / Math.max(1, stripes));
+    }
+
+    /**
+     * Opens the log in {@code dir} and continues behind its last intact record.
+     *
+     * @param groupWindowMillis how long the first record of a group waits for others; for
+     *                          {@link Durability#ASYNC} the longest time until it is forced,
+     *                          ignored for {@link Durability#STRICT}
+     * @param stripes           number of append rings
+     * @param ringSize          number of records that can wait for the flusher in each ring
+     */
+    public LogWriter(File dir, int segmentSize, Durability durability, long groupWindowMillis, int maxBatchSize,
+                     int stripes, int ringSize) throws IOException {
+        if (segmentSize < LogRecord.MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size must be at least " + LogRecord.MAX_RECORD_SIZE);
+        }
+        if (ringSize < 1 || ringSize > 1 << 30) {
+            throw new IllegalArgumentException("Invalid log ring size: " + ringSize);
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Need at least one log buffer stripe: " + stripes);
+        }
+        this.ringSize = Integer.highestOneBit(Math.max(1, ringSize - 1)) << 1;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(this.ringSize);
+        }
+        this.homeStripe = ThreadLocal.withInitial(() -> Math.floorMod(nextStripe.getAndIncrement(), stripes));
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.durability = durability;
+        boolean dsync = durability == Durability.DSYNC;
+        dir.mkdirs();
+
+        long nextLSN = 1;
+        int lastTaid = 0;
+        List<File> segments = LogSegment.list(dir);
+        ControlFile control = ControlFile.read(dir);
+        if (segments.isEmpty()) {
+            segment = LogSegment.create(dir, nextLSN, segmentSize, dsync);
+        } else {
+            // read on from the recorded tail; without one the log is read from its start,
+            // which only happens before the first roll or checkpoint
+            LogReader reader;
+            if (control != null && new File(dir, LogSegment.fileName(control.tailSegment)).exists()) {
+                nextLSN = control.lastLSN + 1;
+                lastTaid = control.lastTaid;
+                checkpointLSN = control.checkpointLSN;
+                reader = LogReader.fromOffset(dir, control.tailSegment, control.tailOffset);
+            } else {
+                reader = new LogReader(dir);
+            }
+            try (reader) {
+                while (reader.next()) {
+                    nextLSN = reader.lsn() + 1;
+                    lastTaid = Math.max(lastTaid, reader.taid());
+                }
+                segment = LogSegment.reopen(reader.segment(), reader.segmentOffset(), dsync);
+            }
+        }
+        this.durableTaid = lastTaid;
+        this.tailSegment = segment.getFirstLSN();
+        this.tailOffset = segment.position();
+        this.appended.set(nextLSN - 1);
+        this.durable = nextLSN - 1;
+        this.groupWindowNanos = durability == Durability.STRICT ? 0 : groupWindowMillis * 1_000_000L;
+        setMaxBatchSize(maxBatchSize);
+
+        flusher = new Thread(this::flushLoop, "log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * @throws IllegalStateException for a window other than 0 with {@link Durability#STRICT}
+     */
+    public void setGroupWindowMillis(long groupWindowMillis) {
+        if (durability == Durability.STRICT && groupWindowMillis != 0) {
+            throw new IllegalStateException("Strict durability forces every commit at once, no group window");
+        }
+        this.groupWindowNanos = groupWindowMillis * 1_000_000L;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        // a full ring has to wake the flusher
+        this.maxBatchSize = Math.min(maxBatchSize, ringSize);
+    }
+
+    /**
+     * Adds a record to the log buffer and returns its LSN, which can be passed to
+     * {@link #awaitDurable(long)}. The call does not wait for the disk.
+     *
+     * @param pageid page the record refers to, -1 if none
+     * @param data   payload, may be null
+     */
+    public long append(byte type, int taid, int pageid, String data) {
+        return append(type, taid, pageid, data == null ? null : data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long append(byte type, int taid, int pageid, byte[] bytes) {
+        int size = LogRecord.size(bytes);
+        if (size > LogRecord.MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Log record too large: " + size + " bytes");
+        }
+        if (closed) {
+            throw new IllegalStateException("Log is closed");
+        }
+        checkFailure();
+        int s = homeStripe.get();
+        for (int tries = 0; !stripes[s].claiming.compareAndSet(false, true); tries++) {
+            s = s + 1 == stripes.length ? 0 : s + 1;
+            if (tries >= stripes.length) {
+                backOff(tries - stripes.length);
+            }
+        }
+        Stripe stripe = stripes[s];
+        long claimed = ++stripe.claimed;
+        long lsn = appended.incrementAndGet();
+        stripe.claiming.set(false);
+        // the slot is free once the flusher has copied the record one lap before
+        for (int spins = 0; claimed - ringSize > stripe.released; spins++) {
+            checkFailure();
+            backOff(spins);
+        }
+        Slot slot = stripe.ring[(int) claimed & stripe.mask];
+        if (slot.data.capacity() < size) {
+            slot.data = ByteBuffer.allocate(Math.max(slot.data.capacity() * 2, size));
+        }
+        slot.data.clear();
+        LogRecord.encode(slot.data, CRC.get(), type, lsn, taid, pageid, bytes);
+        slot.data.flip();
+        slot.appendNanos = System.nanoTime();
+        slot.published = lsn;
+        // the flusher publishes that it waits before it looks at 'appended'
+        if (flusherIdle || flusherGrouping && lsn - durable >= maxBatchSize) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+        return lsn;
+    }
+
+    /**
+     * Blocks until the record with the given LSN (and all before it) has been forced to disk.
+     *
+     * @throws UncheckedIOException if the log could not be written, the record may be lost
+     */
+    public void awaitDurable(long lsn) {
+        synchronized (lock) {
+            boolean interrupted = false;
+            try {
+                while (durable < lsn) {
+                    checkFailure();
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void checkFailure() {
+        IOException e = failure;
+        if (e != null) {
+            throw new UncheckedIOException("Writing the log failed", e);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (signal) {
+                try {
+                    // wait for the first record, then for the group window or a full batch
+                    flusherIdle = true;
+                    while (!closed && appended.get() == durable) {
+                        signal.wait();
+                    }
+                    flusherIdle = false;
+                    flusherGrouping = true;
+                    while (!closed && appended.get() - durable < maxBatchSize) {
+                        long remaining = firstPendingNanos() + groupWindowNanos - System.nanoTime();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        signal.wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                    }
+                    flusherGrouping = false;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            long groupEnd = appended.get();
+            if (groupEnd == durable) {
+                if (closed) {
+                    return; // nothing left to write
+                }
+                continue;
+            }
+            int batch = (int) (groupEnd - durable);
+
+            int bytes = 0;
+            boolean rolled = false;
+            int batchTaid = 0;
+            try {
+                int s = 0;
+                for (long next = durable + 1; next <= groupEnd; next++) {
+                    // everything before 'next' is copied, so it is at the head of a stripe;
+                    // the LSN is handed out, the record may still be being encoded
+                    Stripe stripe = stripes[s];
+                    Slot slot = stripe.head();
+                    for (int tries = 0; slot.published != next; tries++) {
+                        s = s + 1 == stripes.length ? 0 : s + 1;
+                        stripe = stripes[s];
+                        slot = stripe.head();
+                        if (tries >= stripes.length) {
+                            backOff(tries - stripes.length);
+                        }
+                    }
+                    ByteBuffer data = slot.data;
+                    int length = data.remaining();
+                    if (segment.remaining() < length) {
+                        roll(next);
+                        rolled = true;
+                    }
+                    batchTaid = Math.max(batchTaid, data.getInt(LogRecord.TAID_OFFSET));
+                    segment.put(data, length);
+                    bytes += length;
+                    stripe.released++;
+                }
+                segment.force();
+            } catch (IOException e) {
+                // the group is not acknowledged and its slots are not reused, the writer stays failed
+                e.printStackTrace();
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durable = groupEnd;
+                durableTaid = Math.max(durableTaid, batchTaid);
+                tailSegment = segment.getFirstLSN();
+                tailOffset = segment.position();
+                forceCount++;
+                forcedRecords += batch;
+                forcedBytes += bytes;
+                lastBatchSize = batch;
+                maxObservedBatchSize = Math.max(maxObservedBatchSize, batch);
+                lock.notifyAll();
+            }
+            if (rolled) {
+                // the new segment is the tail now
+                synchronized (controlLock) {
+                    try {
+                        writeControlFile();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    // when the oldest published record was appended, now if there is none yet
+    private long firstPendingNanos() {
+        long first = Long.MAX_VALUE;
+        long copied = durable;
+        for (Stripe stripe : stripes) {
+            Slot head = stripe.head();
+            if (head.published > copied && (first == Long.MAX_VALUE || head.appendNanos - first < 0)) {
+                first = head.appendNanos;
+            }
+        }
+        return first == Long.MAX_VALUE ? System.nanoTime() : first;
+    }
+
+    // waits for another thread that is in the middle of an append or copy
+    private static void backOff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else if (spins < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(1_000);
+        }
+    }
+
+    /**
+     * Records {@code beginLSN} as the last complete checkpoint in the control file,
+     * together with the current tail of the log.
+     */
+    public void setCheckpoint(long beginLSN) throws IOException {
+        synchronized (controlLock) {
+            checkpointLSN = beginLSN;
+            writeControlFile();
+        }
+    }
+
+    /**
+     * @return the highest taid in the log as of when it was opened or later appends
+     */
+    public int getLastTaid() {
+        synchronized (lock) {
+            return durableTaid;
+        }
+    }
+
+    // caller holds controlLock
+    private void writeControlFile() throws IOException {
+        ControlFile control;
+        synchronized (lock) {
+            control = new ControlFile(checkpointLSN, durable, durableTaid, tailSegment, tailOffset);
+        }
+        ControlFile.write(dir, control);
+    }
+
+    // closes the full segment and starts a new one beginning with 'firstLSN'
+    private void roll(long firstLSN) throws IOException {
+        segment.close();
+        segment = LogSegment.create(dir, firstLSN, segmentSize, durability == Durability.DSYNC);
+    }
+
+    /**
+     * Deletes segments that only contain records below {@code lsn}. The segment
+     * currently written to is never deleted.
+     *
+     * @return number of deleted segments
+     */
+    public int deleteSegmentsBefore(long lsn) {
+        List<File> segments = LogSegment.list(dir);
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (LogSegment.firstLSN(segments.get(i + 1)) > lsn) {
+                break;
+            }
+            if (segments.get(i).delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Writes everything that is still buffered and stops the flusher thread.
+     * Records appended before the call become durable before it returns, appends
+     * running at the same time may be lost.
+     */
+    public void close() {
+        closed = true;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        try {
+            flusher.join();
+            segment.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long getForceCount() {
+        synchronized (lock) {
+            return forceCount;
+        }
+    }
+
+    public long getForcedRecordCount() {
+        synchronized (lock) {
+            return forcedRecords;
+        }
+    }
+
+    public long getForcedByteCount() {
+        synchronized (lock) {
+            return forcedBytes;
+        }
+    }
+
+    public int getLastBatchSize() {
+        synchronized (lock) {
+            return lastBatchSize;
+        }
+    }
+
+    public int getLargestBatchSize() {
+        synchronized (lock) {
+            return maxObservedBatchSize;
+        }
+    }
+
+    public double getAverageBatchSize() {
+        synchronized (lock) {
+            return forceCount == 0 ? 0 : (double) forcedRecords / forceCount;
+        }
+    }
+
+    public String getStatistics() {
+        synchronized (lock) {
+            return String.format("forces=%d records=%d avgRecordsPerForce=%.2f lastBatch=%d maxBatch=%d",
+                    forceCount, forcedRecords, forceCount == 0 ? 0.0 : (double) forcedRecords / forceCount,
+                    lastBatchSize, maxObservedBatchSize);
+        }
+    }
+}
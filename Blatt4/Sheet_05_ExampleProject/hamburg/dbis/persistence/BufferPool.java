@@ -0,0 +1,486 @@
+package hamburg.dbis.persistence;
+
+import hamburg.dbis.utils.LatencyHistogram;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
+
+/**
+ * Fixed number of page frames with CLOCK replacement. A frame is pinned while a
+ * client works on it and can only be replaced when it is unpinned. Dirty frames are
+ * written back before they are replaced, but only if {@code canFlush} allows it for
+ * the transaction that changed them last (with no-steal only committed changes go to
+ * disk). Before a page is written, {@code forceLog} is called with its page LSN, so the
+ * log records describing the page are always on disk first (write-ahead rule).
+ *
+ * Dirty frames are normally written by a {@link PageCleaner} in the background; a
+ * client only writes a page itself when no clean frame can be replaced.
+ *
+ * The page table is split into stripes with their own lock, so lookups of different
+ * pages do not contend. Pin counts are atomic; a pin count of -1 marks a frame that
+ * is being replaced or loaded. A page is entered into the page table before it is
+ * read, so a second thread asking for it waits for that read instead of installing
+ * its own copy. Everything that walks over all pages (flushing, the dirty page
+ * table) iterates the frame array instead of the page table. The frame monitor
+ * protects the frame contents.
+ */
+class BufferPool {
+
+    static class Frame {
+        final int index;
+        volatile int pageid = -1;
+        long pageLSN;   // LSN of the last update applied to the page
+        long recLSN;    // LSN of the first update since the page was last written
+        String data;
+        int lastTaid;   // transaction of the last update
+        volatile boolean dirty;
+        final AtomicInteger pins = new AtomicInteger();
+        volatile boolean referenced;
+        // in the page table but the page is still being read, waiters use the frame monitor
+        volatile boolean loading;
+
+        Frame(int index) {
+            this.index = index;
+        }
+
+        // fails if the frame is being replaced
+        boolean tryPin() {
+            int p;
+            do {
+                p = pins.get();
+                if (p < 0) {
+                    return false;
+                }
+            } while (!pins.compareAndSet(p, p + 1));
+            return true;
+        }
+    }
+
+    private static class Stripe {
+        final HashMap<Integer, Frame> pages = new HashMap<>();
+    }
+
+    private final Frame[] frames;
+    private final Stripe[] stripes;
+    private final PageStore pageStore;
+    private final IntPredicate canFlush;
+    private final LongConsumer forceLog;
+    private final long waitMillis;
+
+    private PageCleaner cleaner;
+    private int highWatermark = Integer.MAX_VALUE;
+
+    private final AtomicInteger clockHand = new AtomicInteger();
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // time of each write-back of a page or run, including the wait for the log
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    // scratch space of cleanPages, guarded by cleanLock
+    private final Object cleanLock = new Object();
+    private final Frame[] cleanFrames;
+    private final int[] cleanPageids;
+    private final long[] cleanLSNs;
+    private final String[] cleanData;
+
+    // threads waiting for a replaceable frame
+    private final Object frameAvailable = new Object();
+    private volatile int waiters = 0;
+
+    BufferPool(int frameCount, int stripeCount, PageStore pageStore, IntPredicate canFlush, LongConsumer forceLog,
+               long waitMillis) {
+        frames = new Frame[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = new Frame(i);
+        }
+        stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.pageStore = pageStore;
+        this.canFlush = canFlush;
+        this.forceLog = forceLog;
+        this.waitMillis = waitMillis;
+        cleanFrames = new Frame[frameCount];
+        cleanPageids = new int[frameCount];
+        cleanLSNs = new long[frameCount];
+        cleanData = new String[frameCount];
+    }
+
+    private Stripe stripe(int pageid) {
+        int h = pageid * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Returns the pinned frame holding {@code pageid}, loading the page if necessary.
+     * Waits for a frame to become replaceable if all of them are pinned or hold
+     * uncommitted changes.
+     */
+    Frame pin(int pageid) throws IOException {
+        long deadline = 0;
+        boolean counted = false;
+        while (true) {
+            Frame frame = lookupAndPin(pageid);
+            if (frame != null) {
+                if (!counted) {
+                    hits.increment();
+                }
+                return frame;
+            }
+            if (!counted) {
+                misses.increment();
+                counted = true;
+            }
+
+            Frame victim = claimVictim();
+            if (victim == null) {
+                if (cleaner != null) {
+                    cleaner.wakeUp();
+                }
+                if (deadline == 0) {
+                    deadline = System.currentTimeMillis() + waitMillis;
+                }
+                awaitFrame(pageid, deadline);
+                continue;
+            }
+
+            // reserve the page with the claimed frame unless another thread was faster,
+            // then read it; nobody else can load the page meanwhile
+            Stripe stripe = stripe(pageid);
+            synchronized (stripe) {
+                if (stripe.pages.containsKey(pageid)) {
+                    victim.pins.set(0);
+                    continue;
+                }
+                victim.loading = true;
+                victim.pageid = pageid;
+                stripe.pages.put(pageid, victim);
+            }
+            PageStore.Page page;
+            try {
+                page = pageStore.read(pageid);
+            } catch (IOException e) {
+                synchronized (stripe) {
+                    stripe.pages.remove(pageid, victim);
+                }
+                victim.pageid = -1;
+                victim.pins.set(0);
+                loaded(victim);
+                throw e;
+            }
+            synchronized (victim) {
+                victim.pageLSN = page == null ? 0 : page.lsn;
+                victim.data = page == null ? "" : page.data;
+                victim.lastTaid = 0;
+                victim.referenced = true;
+            }
+            victim.pins.set(1);
+            loaded(victim);
+            return victim;
+        }
+    }
+
+    private void loaded(Frame frame) {
+        synchronized (frame) {
+            frame.loading = false;
+            frame.notifyAll();
+        }
+    }
+
+    private Frame lookupAndPin(int pageid) {
+        Stripe stripe = stripe(pageid);
+        while (true) {
+            Frame frame;
+            synchronized (stripe) {
+                frame = stripe.pages.get(pageid);
+                if (frame == null) {
+                    return null;
+                }
+                if (!frame.loading) {
+                    if (frame.tryPin()) {
+                        frame.referenced = true;
+                        return frame;
+                    }
+                    return null;
+                }
+            }
+            // another thread is reading the page, use its copy
+            synchronized (frame) {
+                while (frame.loading) {
+                    try {
+                        frame.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for page " + pageid);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * CLOCK: sweeps at most twice over all frames, clearing reference bits on the way.
+     * The returned frame is claimed (pin count -1), written back if it was dirty and no
+     * longer in the page table.
+     */
+    private Frame claimVictim() throws IOException {
+        for (int i = 0; i < 2 * frames.length; i++) {
+            Frame frame = frames[Math.floorMod(clockHand.getAndIncrement(), frames.length)];
+            if (frame.pins.get() != 0) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            if (!frame.pins.compareAndSet(0, -1)) {
+                continue;
+            }
+            synchronized (frame) {
+                if (frame.dirty) {
+                    if (!canFlush.test(frame.lastTaid)) {
+                        frame.pins.set(0);
+                        continue;
+                    }
+                    try {
+                        writeBack(frame);
+                    } catch (IOException e) {
+                        frame.pins.set(0);
+                        throw e;
+                    }
+                }
+            }
+            int old = frame.pageid;
+            if (old >= 0) {
+                Stripe stripe = stripe(old);
+                synchronized (stripe) {
+                    stripe.pages.remove(old, frame);
+                }
+                frame.pageid = -1;
+            }
+            return frame;
+        }
+        return null;
+    }
+
+    private void awaitFrame(int pageid, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new IllegalStateException("No replaceable buffer frame for page " + pageid
+                    + " (all " + frames.length + " frames pinned or holding uncommitted changes)");
+        }
+        synchronized (frameAvailable) {
+            waiters++;
+            try {
+                // short waits: a frame may also become free without anybody signalling it
+                frameAvailable.wait(Math.min(remaining, 50));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a buffer frame");
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    void unpin(Frame frame) {
+        if (frame.pins.decrementAndGet() == 0 && waiters > 0) {
+            wakeWaiters();
+        }
+    }
+
+    /**
+     * Applies an update to a pinned frame. The caller holds the frame monitor.
+     */
+    void update(Frame frame, long lsn, String data, int taid) {
+        if (!frame.dirty) {
+            frame.dirty = true;
+            frame.recLSN = lsn;
+            int dirty = dirtyCount.incrementAndGet();
+            if (dirty == highWatermark && cleaner != null) {
+                cleaner.wakeUp();
+            }
+        }
+        frame.pageLSN = lsn;
+        frame.data = data;
+        frame.lastTaid = taid;
+    }
+
+    /**
+     * Writes dirty frames whose last change may go to disk until at most
+     * {@code targetDirty} frames are dirty. Candidates are written in page order and
+     * runs of adjacent pages go out as one write. The frames are pinned meanwhile, so
+     * they cannot be replaced, but clients can keep updating them; a frame updated
+     * while its old image was written simply stays dirty. The pages stay cached.
+     *
+     * @return number of pages written
+     */
+    int cleanPages(int targetDirty) throws IOException {
+        synchronized (cleanLock) {
+            int n = 0;
+            for (Frame frame : frames) {
+                if (frame.dirty && frame.tryPin()) {
+                    synchronized (frame) {
+                        if (frame.dirty && canFlush.test(frame.lastTaid)) {
+                            cleanFrames[n] = frame;
+                            cleanPageids[n] = frame.pageid;
+                            cleanLSNs[n] = frame.pageLSN;
+                            cleanData[n] = frame.data;
+                            n++;
+                            continue;
+                        }
+                    }
+                    unpin(frame);
+                }
+            }
+            sortByPageid(n);
+
+            int written = 0;
+            try {
+                int i = 0;
+                while (i < n && dirtyCount.get() > targetDirty) {
+                    int run = 1;
+                    while (i + run < n && cleanPageids[i + run] == cleanPageids[i] + run) {
+                        run++;
+                    }
+                    long maxLSN = 0;
+                    for (int k = i; k < i + run; k++) {
+                        maxLSN = Math.max(maxLSN, cleanLSNs[k]);
+                    }
+                    long started = System.nanoTime();
+                    forceLog.accept(maxLSN);
+                    pageStore.writePages(cleanPageids[i], cleanLSNs, cleanData, i, run);
+                    flushLatency.record(System.nanoTime() - started);
+                    for (int k = i; k < i + run; k++) {
+                        Frame frame = cleanFrames[k];
+                        synchronized (frame) {
+                            if (frame.dirty && frame.pageLSN == cleanLSNs[k]) {
+                                frame.dirty = false;
+                                dirtyCount.decrementAndGet();
+                            }
+                        }
+                    }
+                    written += run;
+                    i += run;
+                }
+            } finally {
+                for (int k = 0; k < n; k++) {
+                    unpin(cleanFrames[k]);
+                    cleanFrames[k] = null;
+                    cleanData[k] = null;
+                }
+            }
+            if (written > 0 && waiters > 0) {
+                wakeWaiters();
+            }
+            return written;
+        }
+    }
+
+    // insertion sort of the first n clean candidates by page id, n is at most the frame count
+    private void sortByPageid(int n) {
+        for (int i = 1; i < n; i++) {
+            Frame frame = cleanFrames[i];
+            int pageid = cleanPageids[i];
+            long lsn = cleanLSNs[i];
+            String data = cleanData[i];
+            int j = i - 1;
+            while (j >= 0 && cleanPageids[j] > pageid) {
+                cleanFrames[j + 1] = cleanFrames[j];
+                cleanPageids[j + 1] = cleanPageids[j];
+                cleanLSNs[j + 1] = cleanLSNs[j];
+                cleanData[j + 1] = cleanData[j];
+                j--;
+            }
+            cleanFrames[j + 1] = frame;
+            cleanPageids[j + 1] = pageid;
+            cleanLSNs[j + 1] = lsn;
+            cleanData[j + 1] = data;
+        }
+    }
+
+    // caller holds the frame monitor
+    private void writeBack(Frame frame) throws IOException {
+        long started = System.nanoTime();
+        forceLog.accept(frame.pageLSN);
+        pageStore.write(frame.pageid, frame.pageLSN, frame.data);
+        flushLatency.record(System.nanoTime() - started);
+        frame.dirty = false;
+        dirtyCount.decrementAndGet();
+    }
+
+    /**
+     * Called when transactions finished, so frames they dirtied may have become replaceable.
+     */
+    void wakeWaiters() {
+        synchronized (frameAvailable) {
+            frameAvailable.notifyAll();
+        }
+    }
+
+    /**
+     * Copies the dirty page table: pageids in {@code [0]}, recLSNs in {@code [1]}.
+     */
+    long[][] dirtyPageTable() {
+        long[] pageids = new long[frames.length];
+        long[] recLSNs = new long[frames.length];
+        int n = 0;
+        for (Frame frame : frames) {
+            synchronized (frame) {
+                if (frame.dirty) {
+                    pageids[n] = frame.pageid;
+                    recLSNs[n] = frame.recLSN;
+                    n++;
+                }
+            }
+        }
+        return new long[][] {Arrays.copyOf(pageids, n), Arrays.copyOf(recLSNs, n)};
+    }
+
+    /**
+     * Lets {@code cleaner} know whenever the number of dirty frames reaches {@code highWatermark}.
+     */
+    void setCleaner(PageCleaner cleaner, int highWatermark) {
+        this.cleaner = cleaner;
+        this.highWatermark = highWatermark;
+    }
+
+    int getFrameCount() {
+        return frames.length;
+    }
+
+    int getDirtyCount() {
+        return dirtyCount.get();
+    }
+
+    LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    String getStatistics() {
+        return String.format("frames=%d dirty=%d hits=%d misses=%d hitRatio=%.3f",
+                frames.length, dirtyCount.get(), getHits(), getMisses(), getHitRatio());
+    }
+}
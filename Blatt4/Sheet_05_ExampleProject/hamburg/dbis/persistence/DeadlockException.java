@@ -0,0 +1,14 @@
+package hamburg.dbis.persistence;
+
+/**
+ * Thrown when a transaction cannot get a page lock because waiting for it would
+ * deadlock or took too long. The transaction has been rolled back when a client sees it.
+ */
+public class DeadlockException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DeadlockException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,310 @@
+package hamburg.dbis.persistence;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared and exclusive page locks for strict two-phase locking: a transaction keeps
+ * every lock until {@link #releaseAll(int)} at commit or abort.
+ *
+ * The lock table is a concurrent hash map, so looking up a lock does not block, and the
+ * state of a lock is a single atomic int. Taking a free lock exclusively is one CAS.
+ * Only shared locks, upgrades and conflicts go through the monitor of the lock. A lock
+ * counts the transactions holding or waiting for it and leaves the table when the last
+ * of them is gone.
+ *
+ * A transaction that has to wait records the page it waits for. Before it waits, and
+ * again each time it wakes up, it follows the wait-for graph
+ * (waiter -> holders of the page -> pages those wait for -> ...). If the walk leads
+ * back to the transaction there is a deadlock. Every member of the cycle finds it, so
+ * only the youngest one (largest taid) gives up with a {@link DeadlockException}, the
+ * others keep waiting. So does a transaction that waited longer than the timeout.
+ */
+class LockManager {
+
+    static final byte SHARED = 1;
+    static final byte EXCLUSIVE = 2;
+
+    // how long a waiter sleeps before it checks for deadlocks again
+    private static final long DETECTION_INTERVAL_MS = 10;
+
+    private static class PageLock {
+        final int pageid;
+        // number of shared holders, -1 if held exclusively, 0 if free
+        final AtomicInteger state = new AtomicInteger();
+        volatile int exclusiveOwner;
+        // shared holders, guarded by the monitor of the lock
+        int[] sharedOwners = new int[4];
+        int sharedCount;
+        volatile int waiters;
+        // holders and transactions trying to get the lock, guarded by the table entry
+        int users;
+
+        PageLock(int pageid) {
+            this.pageid = pageid;
+        }
+    }
+
+    // locks of one transaction, only used by the thread running it
+    private static class Owner {
+        final int taid;
+        int[] pageids = new int[8];
+        byte[] modes = new byte[8];
+        int count;
+        volatile int waitingFor = -1;
+
+        Owner(int taid) {
+            this.taid = taid;
+        }
+
+        int find(int pageid) {
+            for (int i = 0; i < count; i++) {
+                if (pageids[i] == pageid) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void add(int pageid, byte mode) {
+            if (count == pageids.length) {
+                pageids = Arrays.copyOf(pageids, 2 * count);
+                modes = Arrays.copyOf(modes, 2 * count);
+            }
+            pageids[count] = pageid;
+            modes[count] = mode;
+            count++;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, PageLock> locks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Owner> owners = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+
+    LockManager(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Locks {@code pageid} for {@code taid}, waiting as long as another transaction
+     * holds a conflicting lock. Locks already held are kept, a shared lock is upgraded
+     * if {@code mode} is exclusive.
+     *
+     * @throws DeadlockException if waiting would deadlock or takes too long
+     */
+    void lock(int taid, int pageid, byte mode) {
+        Owner owner = owners.computeIfAbsent(taid, Owner::new);
+        int held = owner.find(pageid);
+        if (held >= 0 && (owner.modes[held] == EXCLUSIVE || mode == SHARED)) {
+            return;
+        }
+        if (held >= 0) {
+            acquireSlow(owner, locks.get(pageid), EXCLUSIVE, true);
+            owner.modes[held] = EXCLUSIVE;
+            return;
+        }
+        PageLock lock = locks.compute(pageid, (k, l) -> {
+            if (l == null) {
+                l = new PageLock(k);
+            }
+            l.users++;
+            return l;
+        });
+        if (mode == EXCLUSIVE && lock.state.compareAndSet(0, -1)) {
+            lock.exclusiveOwner = taid;
+        } else {
+            try {
+                acquireSlow(owner, lock, mode, false);
+            } catch (RuntimeException e) {
+                unuse(lock);
+                throw e;
+            }
+        }
+        owner.add(pageid, mode);
+    }
+
+    // drops the lock from the table once nobody holds it or waits for it
+    private void unuse(PageLock lock) {
+        locks.computeIfPresent(lock.pageid, (k, l) -> l == lock && --l.users == 0 ? null : l);
+    }
+
+    private void acquireSlow(Owner owner, PageLock lock, byte mode, boolean upgrade) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean checked = false;
+        owner.waitingFor = lock.pageid;
+        try {
+            while (true) {
+                synchronized (lock) {
+                    if (tryAcquire(owner.taid, lock, mode, upgrade)) {
+                        return;
+                    }
+                    if (checked) {
+                        lock.waiters++;
+                        try {
+                            lock.wait(DETECTION_INTERVAL_MS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("Interrupted while waiting for the lock on page "
+                                    + lock.pageid);
+                        } finally {
+                            lock.waiters--;
+                        }
+                        if (tryAcquire(owner.taid, lock, mode, upgrade)) {
+                            return;
+                        }
+                    }
+                }
+                if (!checked) {
+                    waits.increment();
+                    checked = true;
+                }
+                // the graph is walked outside of any lock monitor
+                if (youngestOnCycle(owner) == owner.taid) {
+                    deadlocks.increment();
+                    throw new DeadlockException("Transaction " + owner.taid + " would deadlock waiting for page "
+                            + lock.pageid);
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new DeadlockException("Transaction " + owner.taid + " waited more than " + timeoutMillis
+                            + " ms for page " + lock.pageid);
+                }
+            }
+        } finally {
+            owner.waitingFor = -1;
+        }
+    }
+
+    // caller holds the monitor of the lock
+    private boolean tryAcquire(int taid, PageLock lock, byte mode, boolean upgrade) {
+        if (mode == EXCLUSIVE) {
+            if (upgrade) {
+                if (lock.sharedCount != 1 || lock.sharedOwners[0] != taid || !lock.state.compareAndSet(1, -1)) {
+                    return false;
+                }
+                lock.sharedCount = 0;
+            } else if (!lock.state.compareAndSet(0, -1)) {
+                return false;
+            }
+            lock.exclusiveOwner = taid;
+            return true;
+        }
+        int s;
+        do {
+            s = lock.state.get();
+            if (s < 0) {
+                return false;
+            }
+        } while (!lock.state.compareAndSet(s, s + 1));
+        if (lock.sharedCount == lock.sharedOwners.length) {
+            lock.sharedOwners = Arrays.copyOf(lock.sharedOwners, 2 * lock.sharedCount);
+        }
+        lock.sharedOwners[lock.sharedCount++] = taid;
+        return true;
+    }
+
+    // follows the wait-for graph from the holders of the page 'me' waits for, returns the
+    // largest taid on the first cycle leading back to 'me' or 0 if there is none
+    private int youngestOnCycle(Owner me) {
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        // taid => the transaction it was reached from
+        HashMap<Integer, Integer> waiter = new HashMap<>();
+        ArrayList<Integer> holders = new ArrayList<>();
+        addHolders(me.waitingFor, me.taid, holders);
+        int taid = me.taid;
+        while (true) {
+            for (int holder : holders) {
+                if (holder == me.taid) {
+                    int youngest = me.taid;
+                    for (int t = taid; t != me.taid; t = waiter.get(t)) {
+                        youngest = Math.max(youngest, t);
+                    }
+                    return youngest;
+                }
+                if (waiter.putIfAbsent(holder, taid) == null) {
+                    todo.add(holder);
+                }
+            }
+            if (todo.isEmpty()) {
+                return 0;
+            }
+            taid = todo.poll();
+            holders.clear();
+            Owner owner = owners.get(taid);
+            int pageid = owner == null ? -1 : owner.waitingFor;
+            if (pageid >= 0) {
+                addHolders(pageid, -1, holders);
+            }
+        }
+    }
+
+    private void addHolders(int pageid, int except, ArrayList<Integer> holders) {
+        PageLock lock = locks.get(pageid);
+        if (lock == null) {
+            return;
+        }
+        int exclusive = lock.exclusiveOwner;
+        if (exclusive != 0 && exclusive != except) {
+            holders.add(exclusive);
+        }
+        synchronized (lock) {
+            for (int i = 0; i < lock.sharedCount; i++) {
+                if (lock.sharedOwners[i] != except) {
+                    holders.add(lock.sharedOwners[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases all locks of the transaction.
+     */
+    void releaseAll(int taid) {
+        Owner owner = owners.remove(taid);
+        if (owner == null) {
+            return;
+        }
+        for (int i = 0; i < owner.count; i++) {
+            PageLock lock = locks.get(owner.pageids[i]);
+            if (owner.modes[i] == EXCLUSIVE) {
+                lock.exclusiveOwner = 0;
+                lock.state.set(0);
+                if (lock.waiters > 0) {
+                    synchronized (lock) {
+                        lock.notifyAll();
+                    }
+                }
+            } else {
+                synchronized (lock) {
+                    for (int k = 0; k < lock.sharedCount; k++) {
+                        if (lock.sharedOwners[k] == taid) {
+                            lock.sharedOwners[k] = lock.sharedOwners[--lock.sharedCount];
+                            break;
+                        }
+                    }
+                    lock.state.decrementAndGet();
+                    if (lock.waiters > 0) {
+                        lock.notifyAll();
+                    }
+                }
+            }
+            unuse(lock);
+        }
+    }
+
+
+    long getWaits() {
+        return waits.sum();
+    }
+
+    long getDeadlocks() {
+        return deadlocks.sum();
+    }
+}
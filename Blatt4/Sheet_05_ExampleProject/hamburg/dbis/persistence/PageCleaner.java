@@ -0,0 +1,55 @@
+package hamburg.dbis.persistence;
+
+import java.io.IOException;
+
+/**
+ * Background thread that writes dirty frames of the buffer pool, so clients do not
+ * have to. It starts cleaning when the number of dirty frames reaches the high
+ * watermark (or a client finds no replaceable frame) and stops at the low watermark.
+ * Between wake-ups it also cleans every {@code intervalMillis}, down to the low watermark.
+ */
+class PageCleaner extends Thread {
+
+    private final BufferPool bufferPool;
+    private final int lowWatermark;
+    private final long intervalMillis;
+    private boolean signalled;
+
+    PageCleaner(BufferPool bufferPool, int highWatermark, int lowWatermark, long intervalMillis) {
+        super("page-cleaner");
+        if (lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Invalid watermarks: " + lowWatermark + " / " + highWatermark);
+        }
+        this.bufferPool = bufferPool;
+        this.lowWatermark = lowWatermark;
+        this.intervalMillis = intervalMillis;
+        setDaemon(true);
+        bufferPool.setCleaner(this, highWatermark);
+    }
+
+    synchronized void wakeUp() {
+        signalled = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!signalled) {
+                        wait(intervalMillis);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                signalled = false;
+            }
+            try {
+                bufferPool.cleanPages(lowWatermark);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package hamburg.dbis.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * All pages in one data file. Page {@code n} lives at offset {@code n * pageSize} and
+ * starts with a header:
+ *
+ * <pre>
+ * long pageLSN   LSN of the last update written to the page
+ * int  length    number of data bytes
+ * int  crc32c    over pageLSN, length and data
+ * </pre>
+ *
+ * Reads and writes are positional, so any number of threads can use the store at once.
+ */
+public class PageStore {
+
+    public static final int HEADER_SIZE = 8 + 4 + 4;
+
+    private final FileChannel channel;
+    private final int pageSize;
+
+    private final ThreadLocal<ByteBuffer> pageBuffer;
+    private final ThreadLocal<ByteBuffer> runBuffer = new ThreadLocal<>();
+    private final ThreadLocal<CRC32C> crc = ThreadLocal.withInitial(CRC32C::new);
+
+    public static class Page {
+        public final int pageid;
+        public final long lsn;
+        public final String data;
+
+        Page(int pageid, long lsn, String data) {
+            this.pageid = pageid;
+            this.lsn = lsn;
+            this.data = data;
+        }
+    }
+
+    public PageStore(File file, int pageSize) throws IOException {
+        if (pageSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Page size must be larger than " + HEADER_SIZE);
+        }
+        this.pageSize = pageSize;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pageBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(pageSize));
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int maxDataSize() {
+        return pageSize - HEADER_SIZE;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if {@code data} does not fit into one page.
+     */
+    public void checkFits(String data) {
+        int size = data.getBytes(StandardCharsets.UTF_8).length;
+        if (size > maxDataSize()) {
+            throw new IllegalArgumentException("Data of " + size + " bytes does not fit into a page of "
+                    + maxDataSize() + " bytes");
+        }
+    }
+
+    /**
+     * @return the page, or null if it has never been written
+     * @throws IOException if the page is damaged (e.g. torn by a crash)
+     */
+    public Page read(int pageid) throws IOException {
+        ByteBuffer buf = readRaw(pageid);
+        if (buf == null) {
+            return null;
+        }
+        long lsn = buf.getLong(0);
+        int length = buf.getInt(8);
+        byte[] bytes = new byte[length];
+        buf.get(HEADER_SIZE, bytes);
+        return new Page(pageid, lsn, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the LSN of the page, or -1 if it has never been written or is damaged
+     */
+    public long readPageLSN(int pageid) {
+        try {
+            ByteBuffer buf = readRaw(pageid);
+            return buf == null ? -1 : buf.getLong(0);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // reads and verifies a page into the thread's buffer, null if never written
+    private ByteBuffer readRaw(int pageid) throws IOException {
+        ByteBuffer buf = pageBuffer.get();
+        buf.clear();
+        long offset = offset(pageid);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, offset + buf.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        if (buf.position() < HEADER_SIZE) {
+            return null;
+        }
+        long lsn = buf.getLong(0);
+        int length = buf.getInt(8);
+        int stored = buf.getInt(12);
+        if (lsn == 0 && length == 0 && stored == 0) {
+            return null;
+        }
+        if (length < 0 || length > maxDataSize() || checksum(buf, length) != stored) {
+            throw new IOException("Page " + pageid + " is damaged");
+        }
+        return buf;
+    }
+
+    public void write(int pageid, long lsn, String data) throws IOException {
+        ByteBuffer buf = pageBuffer.get();
+        encode(buf, lsn, data);
+        long offset = offset(pageid);
+        while (buf.hasRemaining()) {
+            channel.write(buf, offset + buf.position());
+        }
+    }
+
+    /**
+     * Writes the adjacent pages {@code firstPageid .. firstPageid + count - 1} with a
+     * single positional write. {@code lsns} and {@code data} are read from {@code offset}.
+     */
+    public void writePages(int firstPageid, long[] lsns, String[] data, int offset, int count) throws IOException {
+        ByteBuffer buf = runBuffer.get();
+        int size = count * pageSize;
+        if (buf == null || buf.capacity() < size) {
+            buf = ByteBuffer.allocateDirect(Math.max(size, 16 * pageSize));
+            runBuffer.set(buf);
+        }
+        buf.clear();
+        for (int i = 0; i < count; i++) {
+            buf.limit((i + 1) * pageSize).position(i * pageSize);
+            encode(buf.slice(), lsns[offset + i], data[offset + i]);
+        }
+        buf.limit(size).position(0);
+        long start = offset(firstPageid);
+        while (buf.hasRemaining()) {
+            channel.write(buf, start + buf.position());
+        }
+    }
+
+    // encodes one page into 'buf' (position 0, capacity >= pageSize) and flips it
+    private void encode(ByteBuffer buf, long lsn, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxDataSize()) {
+            throw new IllegalArgumentException("Data of " + bytes.length + " bytes does not fit into a page");
+        }
+        buf.clear();
+        buf.limit(pageSize);
+        buf.putLong(lsn);
+        buf.putInt(bytes.length);
+        buf.putInt(0);
+        buf.put(bytes);
+        buf.putInt(12, checksum(buf, bytes.length));
+        // zero the rest so a page always has the same image on disk
+        while (buf.hasRemaining()) {
+            buf.put((byte) 0);
+        }
+        buf.flip();
+    }
+
+    private int checksum(ByteBuffer buf, int length) {
+        CRC32C c = crc.get();
+        c.reset();
+        int pos = buf.position();
+        int lim = buf.limit();
+        buf.limit(12).position(0);
+        c.update(buf);
+        buf.limit(HEADER_SIZE + length).position(HEADER_SIZE);
+        c.update(buf);
+        buf.limit(lim).position(pos);
+        return (int) c.getValue();
+    }
+
+    private long offset(int pageid) {
+        if (pageid < 0) {
+            throw new IllegalArgumentException("Invalid page id: " + pageid);
+        }
+        return (long) pageid * pageSize;
+    }
+
+    /**
+     * Forces all page writes to disk.
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,38 +1,90 @@
 package hamburg.dbis.persistence;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import hamburg.dbis.log.CheckpointData;
+import hamburg.dbis.log.Durability;
+import hamburg.dbis.log.LogReader;
+import hamburg.dbis.log.LogRecord;
+import hamburg.dbis.log.LogSegment;
+import hamburg.dbis.log.LogWriter;
+import hamburg.dbis.utils.LatencyHistogram;
+import hamburg.dbis.utils.Metrics;
+import hamburg.dbis.utils.RateMeter;
+
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
 
-public class PersistenceManager {
+public class PersistenceManager implements PersistenceManagerMBean {
 
     static final private PersistenceManager _manager;
-    static int BUFFERSIZE = 5; 
-    private final Hashtable<Integer, BufferEntry> buffer = new Hashtable<>();
+    // number of page frames in the buffer pool
+    static int BUFFERSIZE = Integer.getInteger("dbis.buffer.frames", 64);
+    // how long a write waits for a replaceable frame before giving up
+    static long BUFFER_WAIT_MS = Long.getLong("dbis.buffer.waitMs", 10_000);
+    // number of independently locked partitions of the buffer's page table
+    static int BUFFER_STRIPES = Integer.getInteger("dbis.buffer.stripes", 64);
+    // steal: frames with uncommitted changes may be written back, recovery undoes them
+    static boolean BUFFER_STEAL = Boolean.parseBoolean(System.getProperty("dbis.buffer.steal", "true"));
+    // the page cleaner starts at the high and stops at the low share of dirty frames
+    static double CLEANER_HIGH_WATERMARK = Double.parseDouble(System.getProperty("dbis.cleaner.highWatermark", "0.75"));
+    static double CLEANER_LOW_WATERMARK = Double.parseDouble(System.getProperty("dbis.cleaner.lowWatermark", "0.25"));
+    static long CLEANER_INTERVAL_MS = Long.getLong("dbis.cleaner.intervalMs", 1000);
+    private final BufferPool bufferPool;
+    private final PageCleaner pageCleaner;
     
-    private final AtomicInteger nextLSN = new AtomicInteger(1);
     private final AtomicInteger nextTransactionID = new AtomicInteger(1000);
     
-    // taid => committed or not
-    private final HashMap<Integer, String> transactionStatus  = new HashMap<>();    
-
-    private final String LOG_FILE = "log.txt";
-    private final String PAGE_PREFIX = "page_";
-    private final String PAGE_SUFFIX = ".txt";
-    private final File logFile = new File(LOG_FILE);
-    private final String COMMITED = "commited";
-    private final String ACTIVE = "active";
+    // unfinished transactions => state and LSN of their first log record
+    private final TransactionTable transactions = new TransactionTable(BUFFER_STRIPES);
+    // how long a write waits for a page lock before its transaction is rolled back
+    static long LOCK_TIMEOUT_MS = Long.getLong("dbis.lock.timeoutMs", 10_000);
+    private final LockManager lockManager = new LockManager(LOCK_TIMEOUT_MS);
+    // versions for snapshot reads; versions no snapshot can see are trimmed at this interval
+    static long VACUUM_INTERVAL_MS = Long.getLong("dbis.mvcc.vacuumIntervalMs", 1000);
+    private final VersionStore versions = new VersionStore();
+    // LSN of the last COMMIT record, new transactions read as of it, guarded by this
+    private long lastCommitLSN = 0;
+    private final Thread vacuum;
+
+    public static final String LOG_DIR = "wal";
+    public static final String DATA_FILE = "pages.dat";
+    static int PAGE_SIZE = Integer.getInteger("dbis.page.size", 4096);
+    private final PageStore pageStore;
+    private final File logDir = new File(LOG_DIR);
+    // group commit: appends are collected and forced together within this window
+    static long LOG_GROUP_WINDOW_MS = Long.getLong("dbis.log.groupWindowMs", 2);
+    // when commits are durable: strict, group, async or dsync, see Durability
+    static Durability LOG_DURABILITY = Durability.parse(System.getProperty("dbis.log.durability", "group"));
+    // async commits: the log is forced at the latest this long after a commit
+    static long LOG_ASYNC_WINDOW_MS = Long.getLong("dbis.log.asyncWindowMs", 10);
+    // append rings, so threads on different cores do not wait for each other
+    static int LOG_STRIPES = Integer.getInteger("dbis.log.stripes", Runtime.getRuntime().availableProcessors());
+    // log records each ring holds before appends have to wait for the flusher
+    static int LOG_RING_SIZE = Integer.getInteger("dbis.log.ringSize", LogWriter.defaultRingSize(LOG_STRIPES));
+    static int LOG_MAX_BATCH = Integer.getInteger("dbis.log.maxBatch", 256);
+    static int LOG_SEGMENT_SIZE = Integer.getInteger("dbis.log.segmentSize", 16 * 1024 * 1024);
+    private final LogWriter logWriter;
+    // fuzzy checkpoints are taken in the background at this interval
+    static long CHECKPOINT_INTERVAL_MS = Long.getLong("dbis.checkpoint.intervalMs", 10_000);
+    // writes hold the read lock while logging + buffering, a checkpoint takes the write
+    // lock only for the moment it copies the transaction and dirty page tables
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private Thread checkpointer;
+    // checkpoints before recovery would not know the losers and dirty pages of the crash
+    private boolean recovered;
+    // metrics, see PersistenceManagerMBean
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    private final RateMeter commitRate = new RateMeter(commits::sum);
+    private final RateMeter logByteRate;
+    private final RateMeter logForceRate;
     int lastTransactionId; 
     static {
         try {
@@ -41,40 +93,48 @@ public class PersistenceManager {
             throw new RuntimeException(e.getMessage());
         }
     }
-    // Helper buffer entry class
-    private static class BufferEntry {
-        int lsn;
-        String data;
-        int taid;
-
-        BufferEntry(int lsn, String data, int taid) {
-            this.lsn = lsn;
-            this.data = data;
-            this.taid = taid;
+    private PersistenceManager() throws IOException {
+        // without a log there is nothing to recover
+        recovered = LogSegment.list(logDir).isEmpty();
+        // the writer finds the tail through the control file, so nothing else is scanned
+        logWriter = new LogWriter(logDir, LOG_SEGMENT_SIZE, LOG_DURABILITY,
+                LOG_DURABILITY == Durability.ASYNC ? LOG_ASYNC_WINDOW_MS : LOG_GROUP_WINDOW_MS, LOG_MAX_BATCH,
+                LOG_STRIPES, LOG_RING_SIZE);
+        nextTransactionID.set(Math.max(nextTransactionID.get(), logWriter.getLastTaid() + 1));
+        CheckpointData checkpoint = CheckpointData.readLast(logDir);
+        if (checkpoint != null) {
+            nextTransactionID.set(Math.max(nextTransactionID.get(), checkpoint.nextTransactionID));
         }
-    }
-
-    private PersistenceManager() {
-        if (logFile.exists()){
-            try (BufferedReader br = new BufferedReader(new FileReader(logFile))){
-                String line; 
-                int maxLSN = 0; 
-                int maxTAID = 0; 
-                while ((line = br.readLine())!=null) {
-                    String[] parts = line.split(",", 4); 
-                    int lsn = Integer.parseInt(parts[0]);
-                    int taid = Integer.parseInt(parts[1]);
-                    maxLSN = Math.max(maxLSN, lsn);
-                    maxTAID = Math.max(maxTAID, taid);
+        pageStore = new PageStore(new File(DATA_FILE), PAGE_SIZE);
+        // with no-steal a frame may only be written back once its last writer has committed
+        IntPredicate canFlush = BUFFER_STEAL ? taid -> true : this::isCommitted;
+        bufferPool = new BufferPool(BUFFERSIZE, BUFFER_STRIPES, pageStore, canFlush, logWriter::awaitDurable,
+                BUFFER_WAIT_MS);
+        int high = Math.max(1, (int) (BUFFERSIZE * CLEANER_HIGH_WATERMARK));
+        int low = Math.min(high, (int) (BUFFERSIZE * CLEANER_LOW_WATERMARK));
+        pageCleaner = new PageCleaner(bufferPool, high, low, CLEANER_INTERVAL_MS);
+        pageCleaner.start();
+        vacuum = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(VACUUM_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
                 }
-                nextLSN.set(maxLSN+1);
-                nextTransactionID.set(maxTAID+1);
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
+                vacuum();
             }
-        }
+        }, "vacuum");
+        vacuum.setDaemon(true);
+        vacuum.start();
+
+        logByteRate = new RateMeter(logWriter::getForcedByteCount);
+        logForceRate = new RateMeter(logWriter::getForceCount);
+        Metrics.register(this, "PersistenceManager");
+        Metrics.startReporter("metrics", () -> {
+            commitRate.sample();
+            logByteRate.sample();
+            logForceRate.sample();
+        }, this::getMetrics);
     }
 
     static public PersistenceManager getInstance() {
@@ -82,75 +142,431 @@ public class PersistenceManager {
     }
 
     public synchronized int beginTransaction() {
+        if (recovered && checkpointer == null) {
+            startCheckpointer();
+        }
         int taid = nextTransactionID.getAndIncrement();
-        transactionStatus.put(taid, ACTIVE);
+        transactions.add(taid, TransactionTable.ACTIVE, lastCommitLSN);
         return taid;
     }
 
     
-    public synchronized void commit(int taid) {
-        if (!transactionStatus.containsKey(taid)) {
+    public void commit(int taid) {
+        if (transactions.state(taid) != TransactionTable.ACTIVE) {
             throw new IllegalArgumentException("Unknown transaction: " + taid);
         }
+        long lsn;
+        synchronized (this) {
+            // versions are stamped in commit order, and a snapshot taken after this
+            // block includes the commit
+            lsn = logWriter.append(LogRecord.COMMIT, taid, -1, (byte[]) null);
+            versions.stamp(taid, lsn);
+            lastCommitLSN = lsn;
+        }
+        // other commits can join the same group while this one waits; an async commit
+        // is visible and releases its locks before it is durable, later commits depending
+        // on it are behind it in the log and cannot survive a crash without it
+        if (LOG_DURABILITY.commitWaits()) {
+            logWriter.awaitDurable(lsn);
+        }
+        versions.publish(taid);
 
-        transactionStatus.put(taid, COMMITED);
+        // finished transactions are not kept, see isCommitted
+        transactions.remove(taid);
+        // strict 2PL: locks are only released once the commit is durable
+        lockManager.releaseAll(taid);
+        // frames dirtied by this transaction can be replaced now
+        bufferPool.wakeWaiters();
+        commits.increment();
+    }
 
-        int lsn = nextLSN.getAndIncrement();
-        appendToLog(String.format("%04d,%04d,EOT", lsn, taid));
+    /**
+     * @return whether the transaction has begun and neither committed nor been rolled back
+     */
+    public boolean isActive(int taid) {
+        return transactions.state(taid) == TransactionTable.ACTIVE;
+    }
+
+    // taid 0 marks a frame that has not been changed since it was loaded, a taid that
+    // was handed out but is no longer in the table has committed
+    private boolean isCommitted(int taid) {
+        return taid == 0 || taid < nextTransactionID.get() && transactions.state(taid) == TransactionTable.UNKNOWN;
+    }
+
+    public LogWriter getLogWriter() {
+        return logWriter;
+    }
+
+    public PageStore getPageStore() {
+        return pageStore;
     }
 
     public void write(int taid, int pageid, String data) {
-        if (!transactionStatus.containsKey(taid)){
-            throw new IllegalArgumentException("Transaction "+ taid + " no started.");
+        if (transactions.state(taid) != TransactionTable.ACTIVE) {
+            throw new IllegalArgumentException("Transaction "+ taid + " not active.");
+        }
+        if (pageid < 0) {
+            throw new IllegalArgumentException("Invalid page id: " + pageid);
+        }
+        pageStore.checkFits(data);
+        try {
+            lockManager.lock(taid, pageid, LockManager.EXCLUSIVE);
+        } catch (IllegalStateException e) {
+            // deadlock victim, timeout or interrupt: the transaction cannot go on
+            abort(taid);
+            throw e;
+        }
+
+        BufferPool.Frame frame;
+        try {
+            frame = bufferPool.pin(pageid);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            checkpointLock.readLock().lock();
+            try {
+                // log and apply under the frame latch, so the page sees its updates in LSN order
+                synchronized (frame) {
+                    byte[] images = LogRecord.updateData(frame.data, data);
+                    long lsn = logWriter.append(LogRecord.UPDATE, taid, pageid, images);
+                    transactions.logged(taid, lsn);
+                    versions.recordWrite(taid, pageid, frame.data, data);
+                    bufferPool.update(frame, lsn, data, taid);
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            bufferPool.unpin(frame);
         }
-        int lsn = nextLSN.getAndIncrement();
+    }
 
-        // add to log
-        appendToLog(String.format("%04d,%04d,%02d,%s", lsn, taid, pageid, data));
-        
-        // Buffer write
-        buffer.put(pageid, new BufferEntry(lsn, data, taid));
+    /**
+     * Reads a page as of the snapshot of the transaction: the last version committed
+     * before the transaction began, or its own write. Reads take no locks, so they
+     * neither block writers nor wait for them.
+     *
+     * @return the page content, an empty string for a page that was never written
+     */
+    public String read(int taid, int pageid) {
+        if (transactions.state(taid) != TransactionTable.ACTIVE) {
+            throw new IllegalArgumentException("Transaction "+ taid + " not active.");
+        }
+        if (pageid < 0) {
+            throw new IllegalArgumentException("Invalid page id: " + pageid);
+        }
+        long snapshotLSN = transactions.snapshotLSN(taid);
+        while (true) {
+            String data = versions.read(taid, pageid, snapshotLSN);
+            if (data != null) {
+                return data;
+            }
+            // no chain: nobody wrote the page since it was last committed, the buffer has it
+            BufferPool.Frame frame;
+            try {
+                frame = bufferPool.pin(pageid);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try {
+                synchronized (frame) {
+                    if (!versions.hasChain(pageid)) {
+                        return frame.data;
+                    }
+                }
+            } finally {
+                bufferPool.unpin(frame);
+            }
+        }
+    }
 
-        if (buffer.size() >= BUFFERSIZE){
-            flushCommittedPages();
+    /**
+     * Removes the page versions that no running transaction can see any more.
+     */
+    public int vacuum() {
+        long oldest;
+        synchronized (this) {
+            // a transaction beginning after this reads at lastCommitLSN or later
+            oldest = transactions.oldestSnapshot(lastCommitLSN);
         }
-        System.out.println("Buffer size: " + buffer.size());
-    
+        return versions.vacuum(oldest);
     }
 
-     private void flushCommittedPages() {
-        List<Integer> toRemove = new ArrayList<>();
-        for (Map.Entry<Integer, BufferEntry> entry : buffer.entrySet()) {
-            int pageid = entry.getKey();
-            BufferEntry be = entry.getValue();
-            if (COMMITED.equals(transactionStatus.get(be.taid))) {
-                // Write page to disk
-                String filename = PAGE_PREFIX + pageid + PAGE_SUFFIX;
-                try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-                    bw.write(String.format("%04d,%s", be.lsn, be.data));
-                } catch (IOException e) {
-                    e.printStackTrace();
+    /**
+     * Writes all dirty pages whose changes are committed, e.g. before a clean shutdown.
+     * Normally the page cleaner does this in the background.
+     */
+    public void flush() {
+        try {
+            bufferPool.cleanPages(0);
+            pageStore.force();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rolls the transaction back: its updates are undone newest first, each with a
+     * COMPENSATION record, and an ABORT record ends it. The restored pages stay in the
+     * buffer and can be replaced like committed ones right away.
+     */
+    public void abort(int taid) {
+        if (!transactions.setState(taid, TransactionTable.ACTIVE, TransactionTable.ABORTING)) {
+            throw new IllegalArgumentException("Transaction " + taid + " not active.");
+        }
+        long firstLSN = transactions.firstLSN(taid);
+        if (firstLSN != 0) {
+            // the before images are read back from the log
+            long lastLSN = transactions.lastLSN(taid);
+            logWriter.awaitDurable(lastLSN);
+            List<Long> lsns = new ArrayList<>();
+            List<Integer> pageids = new ArrayList<>();
+            List<String> beforeImages = new ArrayList<>();
+            try (LogReader reader = new LogReader(logDir, firstLSN, lastLSN)) {
+                while (reader.next()) {
+                    if (reader.taid() == taid && reader.type() == LogRecord.UPDATE) {
+                        byte[] data = new byte[reader.dataLength()];
+                        reader.copyData(data);
+                        lsns.add(reader.lsn());
+                        pageids.add(reader.pageid());
+                        beforeImages.add(LogRecord.beforeImage(data));
+                    }
                 }
-                toRemove.add(pageid);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (int i = lsns.size() - 1; i >= 0; i--) {
+                undo(taid, pageids.get(i), lsns.get(i), beforeImages.get(i));
             }
         }
-        for (int pid : toRemove) {
-            buffer.remove(pid);
+        versions.rollback(taid);
+        // need not be durable: a restart would only undo the compensated updates again
+        logWriter.append(LogRecord.ABORT, taid, -1, (byte[]) null);
+        transactions.remove(taid);
+        lockManager.releaseAll(taid);
+        bufferPool.wakeWaiters();
+        aborts.increment();
+    }
+
+    private void undo(int taid, int pageid, long lsn, String beforeImage) {
+        BufferPool.Frame frame;
+        try {
+            frame = bufferPool.pin(pageid);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            checkpointLock.readLock().lock();
+            try {
+                synchronized (frame) {
+                    long clr = logWriter.append(LogRecord.COMPENSATION, taid, pageid,
+                            LogRecord.compensationData(lsn, beforeImage));
+                    bufferPool.update(frame, clr, beforeImage, taid);
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+        } finally {
+            bufferPool.unpin(frame);
         }
-        System.out.println("Buffer size after removing: " + buffer.size());
+    }
+
+    public String getBufferStatistics() {
+        return bufferPool.getStatistics();
+    }
+
+    @Override
+    public double getBufferHitRatio() {
+        return bufferPool.getHitRatio();
+    }
+
+    @Override
+    public long getLockWaits() {
+        return lockManager.getWaits();
+    }
+
+    @Override
+    public long getDeadlocks() {
+        return lockManager.getDeadlocks();
+    }
+
+    @Override
+    public String getDurability() {
+        return LOG_DURABILITY.name();
+    }
+
+    @Override
+    public int getActiveTransactions() {
+        return transactions.size();
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    @Override
+    public double getCommitsPerSecond() {
+        return commitRate.getRate();
+    }
+
+    @Override
+    public long getAborts() {
+        return aborts.sum();
+    }
+
+    @Override
+    public long getLogBytes() {
+        return logWriter.getForcedByteCount();
+    }
+
+    @Override
+    public double getLogBytesPerSecond() {
+        return logByteRate.getRate();
+    }
+
+    @Override
+    public long getLogForces() {
+        return logWriter.getForceCount();
+    }
+
+    @Override
+    public double getLogForcesPerSecond() {
+        return logForceRate.getRate();
+    }
+
+    @Override
+    public int getDirtyPages() {
+        return bufferPool.getDirtyCount();
+    }
 
+    @Override
+    public long getPageFlushes() {
+        return bufferPool.getFlushLatency().getCount();
     }
 
+    @Override
+    public double getPageFlushLatencyP50() {
+        return bufferPool.getFlushLatency().getPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getPageFlushLatencyP99() {
+        return bufferPool.getFlushLatency().getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getPageFlushLatencyMax() {
+        return bufferPool.getFlushLatency().getMax() / 1e6;
+    }
+
+    @Override
+    public String getMetrics() {
+        LatencyHistogram flushLatency = bufferPool.getFlushLatency();
+        return String.format("durability=%s active=%d commits/s=%.1f aborts=%d log KB/s=%.1f forces/s=%.1f hitRatio=%.3f dirty=%d "
+                        + "flushes=%d flush p50=%.3f ms p99=%.3f ms lockWaits=%d deadlocks=%d",
+                getDurability(), getActiveTransactions(), getCommitsPerSecond(), getAborts(), getLogBytesPerSecond() / 1024,
+                getLogForcesPerSecond(), getBufferHitRatio(), getDirtyPages(), flushLatency.getCount(),
+                flushLatency.getPercentile(50) / 1e6, flushLatency.getPercentile(99) / 1e6, getLockWaits(),
+                getDeadlocks());
+    }
 
-    private void appendToLog(String line) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(logFile, true))) {
-            bw.write(line);
-            bw.newLine();
-            bw.flush();
+    /**
+     * Takes a fuzzy checkpoint: BEGIN_CHECKPOINT, a copy of the active transaction table
+     * and the dirty page table in END_CHECKPOINT records, and finally the control file
+     * pointing at it. Pages are not written, so clients are only held up while the tables
+     * are copied. Log segments that a restart no longer needs are deleted afterwards.
+     */
+    public void checkpoint() {
+        synchronized (this) {
+            if (!recovered) {
+                throw new IllegalStateException("No checkpoint before recovery has completed");
+            }
+        }
+        CheckpointData data;
+        checkpointLock.writeLock().lock();
+        try {
+            long beginLSN = logWriter.append(LogRecord.BEGIN_CHECKPOINT, -1, -1, (byte[]) null);
+
+            // transactions being rolled back are still losers for a restart
+            int[] active = transactions.loggedTransactions();
+            int count = 0;
+            int[] att = new int[active.length];
+            long[] firstLSNs = new long[active.length];
+            for (int taid : active) {
+                // may have finished in the meantime
+                long firstLSN = transactions.firstLSN(taid);
+                if (firstLSN != 0) {
+                    att[count] = taid;
+                    firstLSNs[count] = firstLSN;
+                    count++;
+                }
+            }
+            att = Arrays.copyOf(att, count);
+            firstLSNs = Arrays.copyOf(firstLSNs, count);
+            byte[] states = new byte[count];
+            Arrays.fill(states, CheckpointData.ACTIVE);
+
+            long[][] dirtyPages = bufferPool.dirtyPageTable();
+            int[] dpt = new int[dirtyPages[0].length];
+            long[] recLSNs = dirtyPages[1];
+            for (int i = 0; i < dpt.length; i++) {
+                dpt[i] = (int) dirtyPages[0][i];
+            }
+            data = new CheckpointData(beginLSN, nextTransactionID.get(), att, states, firstLSNs, dpt, recLSNs);
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+
+        // a large buffer pool may need more than one record for its dirty page table
+        long endLSN = 0;
+        for (byte[] part : data.encode()) {
+            endLSN = logWriter.append(LogRecord.END_CHECKPOINT, -1, -1, part);
+        }
+        logWriter.awaitDurable(endLSN);
+        try {
+            // pages missing from the dirty page table must really be on disk before the
+            // control file lets a restart skip their log records
+            pageStore.force();
+            logWriter.setCheckpoint(data.beginLSN);
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+        logWriter.deleteSegmentsBefore(data.redoStartLSN());
+    }
+
+    /**
+     * Called by the recovery when it has completed, from then on checkpoints are taken.
+     */
+    public synchronized void recoveryCompleted() {
+        recovered = true;
+        if (checkpointer == null) {
+            startCheckpointer();
         }
     }
+
+    private void startCheckpointer() {
+        checkpointer = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(CHECKPOINT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    checkpoint();
+                } catch (RuntimeException e) {
+                    // the next interval tries again
+                    e.printStackTrace();
+                }
+            }
+        }, "checkpointer");
+        checkpointer.setDaemon(true);
+        checkpointer.start();
+    }
+
     
 
 }
@@ -0,0 +1,51 @@
+package hamburg.dbis.persistence;
+
+/**
+ * Runtime metrics of the {@link PersistenceManager}, published as
+ * {@code hamburg.dbis:type=PersistenceManager}. Rates are per second over the last
+ * sampling interval, latencies in milliseconds.
+ */
+public interface PersistenceManagerMBean {
+
+    /**
+     * @return the durability mode of commits, see {@link hamburg.dbis.log.Durability}
+     */
+    String getDurability();
+
+    int getActiveTransactions();
+
+    long getCommits();
+
+    double getCommitsPerSecond();
+
+    long getAborts();
+
+    long getLogBytes();
+
+    double getLogBytesPerSecond();
+
+    long getLogForces();
+
+    double getLogForcesPerSecond();
+
+    double getBufferHitRatio();
+
+    int getDirtyPages();
+
+    long getPageFlushes();
+
+    double getPageFlushLatencyP50();
+
+    double getPageFlushLatencyP99();
+
+    double getPageFlushLatencyMax();
+
+    long getLockWaits();
+
+    long getDeadlocks();
+
+    /**
+     * @return all of the above in one line
+     */
+    String getMetrics();
+}
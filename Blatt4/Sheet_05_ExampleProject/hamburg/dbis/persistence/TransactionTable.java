@@ -0,0 +1,264 @@
+package hamburg.dbis.persistence;
+
+import java.util.Arrays;
+
+/**
+ * The transactions that have not finished yet, with their state, their snapshot and
+ * the LSNs of their first and last log record. A transaction is removed as soon as it has finished, so
+ * the table only holds the transactions running at the same time, no matter how long
+ * the system is up.
+ *
+ * Keys are primitive taids in open addressing tables (linear probing), split into
+ * stripes with their own lock like the page table of the {@link BufferPool}, so
+ * lookups neither allocate nor contend with unrelated transactions.
+ */
+class TransactionTable {
+
+    static final byte UNKNOWN = 0;
+    static final byte ACTIVE = 1;
+    static final byte ABORTING = 2;  // being rolled back
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static class Stripe {
+        int[] taids = new int[INITIAL_CAPACITY];    // 0 marks a free slot
+        byte[] states = new byte[INITIAL_CAPACITY];
+        long[] firstLSNs = new long[INITIAL_CAPACITY];
+        long[] lastLSNs = new long[INITIAL_CAPACITY];
+        long[] snapshotLSNs = new long[INITIAL_CAPACITY];
+        int size;
+    }
+
+    private final Stripe[] stripes;
+
+    TransactionTable(int stripeCount) {
+        stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static int hash(int taid) {
+        int h = taid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripe(int taid) {
+        return stripes[hash(taid) & (stripes.length - 1)];
+    }
+
+    // slot of taid, or of the free slot where it would go; the caller holds the stripe lock
+    private static int slot(Stripe stripe, int taid) {
+        int mask = stripe.taids.length - 1;
+        int i = (hash(taid) >>> 8) & mask;
+        while (stripe.taids[i] != 0 && stripe.taids[i] != taid) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    void add(int taid, byte state, long snapshotLSN) {
+        if (taid <= 0) {
+            throw new IllegalArgumentException("Invalid transaction id: " + taid);
+        }
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            if (stripe.taids[i] == 0) {
+                if (2 * (stripe.size + 1) > stripe.taids.length) {
+                    grow(stripe);
+                    i = slot(stripe, taid);
+                }
+                stripe.taids[i] = taid;
+                stripe.firstLSNs[i] = 0;
+                stripe.lastLSNs[i] = 0;
+                stripe.size++;
+            }
+            stripe.states[i] = state;
+            stripe.snapshotLSNs[i] = snapshotLSN;
+        }
+    }
+
+    /**
+     * @return the state of the transaction, {@link #UNKNOWN} if it is not in the table
+     */
+    byte state(int taid) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            return stripe.taids[i] == 0 ? UNKNOWN : stripe.states[i];
+        }
+    }
+
+    /**
+     * Changes the state of the transaction if it is in state {@code expected}.
+     *
+     * @return false if the transaction is unknown or in another state
+     */
+    boolean setState(int taid, byte expected, byte state) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            if (stripe.taids[i] == 0 || stripe.states[i] != expected) {
+                return false;
+            }
+            stripe.states[i] = state;
+            return true;
+        }
+    }
+
+    /**
+     * Records that the transaction wrote the log record {@code lsn}.
+     */
+    void logged(int taid, long lsn) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            if (stripe.taids[i] != 0) {
+                if (stripe.firstLSNs[i] == 0) {
+                    stripe.firstLSNs[i] = lsn;
+                }
+                stripe.lastLSNs[i] = Math.max(stripe.lastLSNs[i], lsn);
+            }
+        }
+    }
+
+    /**
+     * @return LSN of the first log record of the transaction, 0 if it has not logged anything
+     */
+    long firstLSN(int taid) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            return stripe.taids[i] == 0 ? 0 : stripe.firstLSNs[i];
+        }
+    }
+
+    /**
+     * @return LSN of the last log record of the transaction, 0 if it has not logged anything
+     */
+    long lastLSN(int taid) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            return stripe.taids[i] == 0 ? 0 : stripe.lastLSNs[i];
+        }
+    }
+
+    /**
+     * @return the snapshot LSN the transaction reads at, -1 if it is not in the table
+     */
+    long snapshotLSN(int taid) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            return stripe.taids[i] == 0 ? -1 : stripe.snapshotLSNs[i];
+        }
+    }
+
+    /**
+     * @return the smallest snapshot LSN of all transactions, {@code bound} if it is smaller
+     */
+    long oldestSnapshot(long bound) {
+        long oldest = bound;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.taids.length; i++) {
+                    if (stripe.taids[i] != 0) {
+                        oldest = Math.min(oldest, stripe.snapshotLSNs[i]);
+                    }
+                }
+            }
+        }
+        return oldest;
+    }
+
+    void remove(int taid) {
+        Stripe stripe = stripe(taid);
+        synchronized (stripe) {
+            int i = slot(stripe, taid);
+            if (stripe.taids[i] == 0) {
+                return;
+            }
+            // backward shift deletion keeps the probe sequences intact without tombstones
+            int mask = stripe.taids.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (stripe.taids[j] == 0) {
+                    break;
+                }
+                int home = (hash(stripe.taids[j]) >>> 8) & mask;
+                // move entry j into the hole at i unless its home lies cyclically in (i, j]
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    stripe.taids[i] = stripe.taids[j];
+                    stripe.states[i] = stripe.states[j];
+                    stripe.firstLSNs[i] = stripe.firstLSNs[j];
+                    stripe.lastLSNs[i] = stripe.lastLSNs[j];
+                    stripe.snapshotLSNs[i] = stripe.snapshotLSNs[j];
+                    i = j;
+                }
+            }
+            stripe.taids[i] = 0;
+            stripe.states[i] = UNKNOWN;
+            stripe.firstLSNs[i] = 0;
+            stripe.lastLSNs[i] = 0;
+            stripe.snapshotLSNs[i] = 0;
+            stripe.size--;
+        }
+    }
+
+    private static void grow(Stripe stripe) {
+        int[] taids = stripe.taids;
+        byte[] states = stripe.states;
+        long[] firstLSNs = stripe.firstLSNs;
+        long[] lastLSNs = stripe.lastLSNs;
+        long[] snapshotLSNs = stripe.snapshotLSNs;
+        stripe.taids = new int[taids.length * 2];
+        stripe.states = new byte[taids.length * 2];
+        stripe.firstLSNs = new long[taids.length * 2];
+        stripe.lastLSNs = new long[taids.length * 2];
+        stripe.snapshotLSNs = new long[taids.length * 2];
+        for (int k = 0; k < taids.length; k++) {
+            if (taids[k] != 0) {
+                int i = slot(stripe, taids[k]);
+                stripe.taids[i] = taids[k];
+                stripe.states[i] = states[k];
+                stripe.firstLSNs[i] = firstLSNs[k];
+                stripe.lastLSNs[i] = lastLSNs[k];
+                stripe.snapshotLSNs[i] = snapshotLSNs[k];
+            }
+        }
+    }
+
+    /**
+     * @return the transactions that have logged something, in no particular order
+     */
+    int[] loggedTransactions() {
+        int[] result = new int[16];
+        int n = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.taids.length; i++) {
+                    if (stripe.taids[i] != 0 && stripe.firstLSNs[i] != 0) {
+                        if (n == result.length) {
+                            result = Arrays.copyOf(result, 2 * n);
+                        }
+                        result[n++] = stripe.taids[i];
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+}
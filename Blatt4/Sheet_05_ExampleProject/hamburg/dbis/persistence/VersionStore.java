@@ -0,0 +1,214 @@
+package hamburg.dbis.persistence;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Version chains for snapshot reads. A page gets a chain with its first write: a base
+ * version holding the committed content before the write, then one version per
+ * transaction that wrote the page, newest first. Writes create uncommitted versions,
+ * and a commit stamps them with the LSN of its COMMIT record. Until that record is
+ * durable the stamped versions are pending, and readers that would see one wait.
+ *
+ * A reader with snapshot LSN {@code s} sees the newest version stamped at or before
+ * {@code s}, and its own uncommitted writes. Pages without a chain have no writes
+ * anybody could miss; they are read from the buffer. {@link #vacuum(long)} trims the
+ * versions that no snapshot can see any more and drops chains that only hold what is in
+ * the buffer anyway.
+ *
+ * A chain is changed under its monitor. A writer installs its version while it holds
+ * the frame monitor of the page, before it changes the frame.
+ */
+class VersionStore {
+
+    static final long UNCOMMITTED = Long.MAX_VALUE;
+
+    static class Version {
+        final int taid;
+        final int pageid;
+        volatile String data;
+        volatile long commitLSN;
+        volatile boolean pending = true;  // commit not yet durable
+        Version older;
+
+        Version(int taid, int pageid, String data, long commitLSN, Version older) {
+            this.taid = taid;
+            this.pageid = pageid;
+            this.data = data;
+            this.commitLSN = commitLSN;
+            this.older = older;
+        }
+    }
+
+    private static class Chain {
+        Version head;
+        boolean removed;
+    }
+
+    private final ConcurrentHashMap<Integer, Chain> chains = new ConcurrentHashMap<>();
+    // uncommitted versions of each transaction
+    private final ConcurrentHashMap<Integer, ArrayList<Version>> writeSets = new ConcurrentHashMap<>();
+
+    /**
+     * Records a write of {@code taid}, which holds the exclusive lock and the frame
+     * monitor of the page. {@code before} is the page content before the write.
+     */
+    void recordWrite(int taid, int pageid, String before, String after) {
+        while (true) {
+            Chain chain = chains.computeIfAbsent(pageid, k -> new Chain());
+            synchronized (chain) {
+                if (chain.removed) {
+                    continue;
+                }
+                if (chain.head == null) {
+                    Version base = new Version(0, pageid, before, 0, null);
+                    base.pending = false;
+                    chain.head = base;
+                }
+                if (chain.head.taid == taid && chain.head.commitLSN == UNCOMMITTED) {
+                    chain.head.data = after;
+                } else {
+                    chain.head = new Version(taid, pageid, after, UNCOMMITTED, chain.head);
+                    writeSets.computeIfAbsent(taid, k -> new ArrayList<>()).add(chain.head);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stamps the versions of {@code taid} with its commit LSN. They stay pending until
+     * {@link #publish(int)}. Commits are stamped in LSN order.
+     */
+    void stamp(int taid, long commitLSN) {
+        ArrayList<Version> versions = writeSets.get(taid);
+        if (versions != null) {
+            for (Version version : versions) {
+                version.commitLSN = commitLSN;
+            }
+        }
+    }
+
+    /**
+     * Makes the stamped versions of {@code taid} visible once its commit is durable.
+     */
+    void publish(int taid) {
+        ArrayList<Version> versions = writeSets.remove(taid);
+        if (versions != null) {
+            for (Version version : versions) {
+                synchronized (version) {
+                    version.pending = false;
+                    version.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the versions of an aborted transaction.
+     */
+    void rollback(int taid) {
+        ArrayList<Version> versions = writeSets.remove(taid);
+        if (versions == null) {
+            return;
+        }
+        for (Version version : versions) {
+            Chain chain = chains.get(version.pageid);
+            synchronized (chain) {
+                // the writer holds the page lock, so its version is at the head
+                chain.head = version.older;
+            }
+        }
+    }
+
+    /**
+     * @return the page as seen by {@code taid} with snapshot {@code snapshotLSN}, or
+     * null if the page has no chain
+     */
+    String read(int taid, int pageid, long snapshotLSN) {
+        Chain chain = chains.get(pageid);
+        if (chain == null) {
+            return null;
+        }
+        Version version;
+        synchronized (chain) {
+            version = chain.head;
+        }
+        while (version != null) {
+            long commitLSN = version.commitLSN;
+            if (commitLSN == UNCOMMITTED) {
+                if (version.taid == taid) {
+                    return version.data;
+                }
+            } else if (commitLSN <= snapshotLSN) {
+                awaitPublished(version);
+                return version.data;
+            }
+            synchronized (chain) {
+                version = version.older;
+            }
+        }
+        throw new IllegalStateException("No version of page " + pageid + " visible at LSN " + snapshotLSN);
+    }
+
+    private static void awaitPublished(Version version) {
+        if (!version.pending) {
+            return;
+        }
+        synchronized (version) {
+            boolean interrupted = false;
+            while (version.pending) {
+                try {
+                    version.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    boolean hasChain(int pageid) {
+        return chains.containsKey(pageid);
+    }
+
+    /**
+     * Cuts every chain behind the newest published version stamped at or before
+     * {@code oldestSnapshot}; no running or future snapshot sees anything older. Chains
+     * that only consist of such a version are dropped.
+     *
+     * @return number of versions removed
+     */
+    int vacuum(long oldestSnapshot) {
+        int removed = 0;
+        for (Map.Entry<Integer, Chain> entry : chains.entrySet()) {
+            Chain chain = entry.getValue();
+            synchronized (chain) {
+                Version version = chain.head;
+                while (version != null && (version.commitLSN > oldestSnapshot || version.pending)) {
+                    version = version.older;
+                }
+                if (version == null) {
+                    continue;
+                }
+                for (Version v = version.older; v != null; v = v.older) {
+                    removed++;
+                }
+                version.older = null;
+                if (version == chain.head) {
+                    chain.removed = true;
+                    chains.remove(entry.getKey(), chain);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    int getChainCount() {
+        return chains.size();
+    }
+}
@@ -0,0 +1,103 @@
+package hamburg.dbis.recovery;
+
+import java.util.Arrays;
+
+/**
+ * Set of ints in a single open-addressing array, without boxing. Recovery keeps its
+ * transaction sets in these, one int per transaction.
+ */
+class IntSet {
+
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys = newTable(16);
+    private int size;
+    private boolean containsFree;  // FREE itself is a valid member
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, FREE);
+        return table;
+    }
+
+    private static int slot(int key, int mask) {
+        return (key * 0x9E3779B9 >>> 16 ^ key * 0x9E3779B9) & mask;
+    }
+
+    boolean add(int key) {
+        if (key == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        size++;
+        if (4 * size > 3 * keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    private void grow() {
+        int[] old = keys;
+        keys = newTable(2 * old.length);
+        int mask = keys.length - 1;
+        for (int key : old) {
+            if (key != FREE) {
+                int i = slot(key, mask);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+
+    boolean contains(int key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int[] toArray() {
+        int[] result = new int[size];
+        int n = 0;
+        if (containsFree) {
+            result[n++] = FREE;
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+}
@@ -1,11 +1,37 @@
 package hamburg.dbis.recovery;
 
+import hamburg.dbis.log.CheckpointData;
+import hamburg.dbis.log.LogReader;
+import hamburg.dbis.log.LogRecord;
+import hamburg.dbis.log.LogSegment;
+import hamburg.dbis.log.LogWriter;
+import hamburg.dbis.persistence.PageStore;
+import hamburg.dbis.persistence.PersistenceManager;
+import hamburg.dbis.utils.Metrics;
+
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
-public class RecoveryManager {
+public class RecoveryManager implements RecoveryManagerMBean {
 
     static final private RecoveryManager _manager;
+    // number of threads redoing pages in parallel
+    static int REDO_THREADS = Integer.getInteger("dbis.recovery.threads", Runtime.getRuntime().availableProcessors());
+    // records that may wait for each redo worker
+    static int REDO_QUEUE_SIZE = Integer.getInteger("dbis.recovery.queueSize", 4096);
+    private static final int REDO_BATCH = 256;
+    // redo only writes the newest image of each page, once, at the end of the pass;
+    // memory then grows with the number of pages redone
+    static boolean REDO_COALESCE = Boolean.parseBoolean(System.getProperty("dbis.recovery.coalesce", "true"));
+    // pages written with one write when coalescing
+    private static final int REDO_RUN = 256;
 
     static {
         try {
@@ -15,84 +41,423 @@ public class RecoveryManager {
         }
     }
 
+    // progress, see RecoveryManagerMBean
+    private volatile String phase = "idle";
+    private volatile long started;
+    private volatile long finished;
+    private volatile long recordsRead;
+    private volatile long recordsToRedo;
+    private final LongAdder recordsRedone = new LongAdder();
+    private final LongAdder pagesRedone = new LongAdder();
+    private volatile long pagesUndone;
+
     private RecoveryManager() {
-        // Nothing needed here for now
+        Metrics.register(this, "RecoveryManager");
     }
 
     public static RecoveryManager getInstance() {
         return _manager;
     }
 
+    /**
+     * ARIES-style restart in three phases:
+     * <ol>
+     * <li>analysis: reads the log from the last checkpoint on and rebuilds the dirty page
+     * table and the set of transactions that never finished (losers)</li>
+     * <li>redo: repeats history, i.e. reapplies every update and compensation whose page
+     * may be missing it, no matter which transaction wrote it</li>
+     * <li>undo: rolls the losers back in reverse log order, logging a compensation record
+     * for each undone update and an ABORT record per loser</li>
+     * </ol>
+     * Updates that already have a compensation record are not undone again, so a crash
+     * during recovery is harmless.
+     *
+     * The log is read twice, analysis and redo each stream it once. Besides the dirty
+     * page table only sets of transaction ids and the updates of the losers are kept,
+     * so the memory needed grows with the number of transactions, not with the log.
+     */
     public void startRecovery() {
         System.out.println("Starting recovery...");
+        started = System.nanoTime();
+        phase = "analysis";
+        Thread reporter = Metrics.startReporter("recovery", () -> { }, this::getProgress);
+        try {
+            recover();
+            PersistenceManager.getInstance().recoveryCompleted();
+        } finally {
+            reporter.interrupt();
+            finished = System.nanoTime();
+            phase = "done";
+        }
+    }
+
+    private void recover() {
 
-        File logFile = new File("log.txt");
-        if (!logFile.exists()) {
+        File logDir = new File(PersistenceManager.LOG_DIR);
+        if (LogSegment.list(logDir).isEmpty()) {
             System.out.println("No log file found. Nothing to recover.");
             return;
         }
 
-        // === Step 1: Read log and collect entries ===
-        List<LogEntry> logEntries = new ArrayList<>();
-        Set<Integer> committedTransactions = new HashSet<>();
+        // === Step 1: Analysis ===
+        // Only keeps what the redo pass needs to decide on a record when it reads it:
+        // the outcome of each transaction and the dirty page table.
+        IntSet finishedTransactions = new IntSet();
+        IntSet abortedTransactions = new IntSet();
+        IntSet writers = new IntSet();
+        // pageid => LSN of the first update that may be missing on disk, null: no checkpoint
+        Map<Integer, Long> dirtyPages = null;
 
-        try (BufferedReader br = new BufferedReader(new FileReader(logFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                int lsn = Integer.parseInt(parts[0]);
-                int taid = Integer.parseInt(parts[1]);
+        long startLSN = 0;
+        long checkpointLSN = 0;
+        try {
+            CheckpointData checkpoint = CheckpointData.readLast(logDir);
+            if (checkpoint != null) {
+                // every update that may be missing on disk is at or behind this LSN,
+                // and so is every record of a transaction that was active
+                startLSN = checkpoint.redoStartLSN();
+                checkpointLSN = checkpoint.beginLSN;
+                dirtyPages = new HashMap<>();
+                for (int i = 0; i < checkpoint.pageids.length; i++) {
+                    dirtyPages.put(checkpoint.pageids[i], checkpoint.recLSNs[i]);
+                }
+                System.out.println("Starting from checkpoint " + checkpoint.beginLSN + " at LSN " + startLSN);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-                if (parts.length == 3 && "EOT".equals(parts[2])) {
-                    committedTransactions.add(taid);
-                } else if (parts.length == 4) {
-                    int pageid = Integer.parseInt(parts[2]);
-                    String data = parts[3];
-                    logEntries.add(new LogEntry(lsn, taid, pageid, data));
+        try (LogReader reader = new LogReader(logDir, startLSN, Long.MAX_VALUE)) {
+            while (reader.next()) {
+                recordsRead++;
+                byte type = reader.type();
+                if (type == LogRecord.COMMIT) {
+                    finishedTransactions.add(reader.taid());
+                } else if (type == LogRecord.ABORT) {
+                    finishedTransactions.add(reader.taid());
+                    abortedTransactions.add(reader.taid());
+                } else if (type == LogRecord.UPDATE || type == LogRecord.COMPENSATION) {
+                    writers.add(reader.taid());
+                    // pages first changed after the checkpoint are missing from its table
+                    if (dirtyPages != null && reader.lsn() > checkpointLSN) {
+                        dirtyPages.putIfAbsent(reader.pageid(), reader.lsn());
+                    }
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        // including losers whose updates were all undone before a crash during recovery
+        IntSet losers = new IntSet();
+        for (int taid : writers.toArray()) {
+            if (!finishedTransactions.contains(taid)) {
+                losers.add(taid);
+            }
+        }
 
-        // === Step 2: Redo committed writes if page is outdated ===
-        for (LogEntry entry : logEntries) {
-            if (committedTransactions.contains(entry.taid)) {
-                String filename = "Page_" + entry.pageid + ".txt";
-                File pageFile = new File(filename);
-                int pageLSN = -1;
+        // === Step 2: Redo (repeat history) if page is outdated ===
+        // A second pass hands each record to the redo workers as soon as it is read.
+        // Records are partitioned by page, so each page is redone by exactly one worker
+        // in log order while different pages are redone concurrently; the queues to the
+        // workers are bounded, so reading never runs far ahead. Updates of aborted
+        // transactions are skipped: each has a compensation behind it that restores the
+        // page anyway. Only the updates of losers are kept, for the undo. Records carry
+        // whole page images, so when coalescing the last one of a page wins and each page
+        // is written once, however often it was updated.
+        phase = "redo";
+        PageStore pageStore = PersistenceManager.getInstance().getPageStore();
+        int workers = Math.max(1, REDO_THREADS);
+        // records are handed over in batches, a queue holds about REDO_QUEUE_SIZE records
+        List<BlockingQueue<List<LogEntry>>> queues = new ArrayList<>();
+        List<List<LogEntry>> batches = new ArrayList<>();
+        long[] perWorker = new long[workers];
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            BlockingQueue<List<LogEntry>> queue = new ArrayBlockingQueue<>(Math.max(1, REDO_QUEUE_SIZE / REDO_BATCH));
+            queues.add(queue);
+            batches.add(new ArrayList<>(REDO_BATCH));
+            results.add(pool.submit(() -> redoAll(pageStore, queue)));
+        }
+        pool.shutdown();
 
-                if (pageFile.exists()) {
-                    try (BufferedReader br = new BufferedReader(new FileReader(pageFile))) {
-                        String[] parts = br.readLine().split(",", 2);
-                        pageLSN = Integer.parseInt(parts[0]);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+        List<LogEntry> loserUpdates = new ArrayList<>();
+        Set<Long> compensated = new HashSet<>();
+        long started = System.nanoTime();
+        try {
+            try (LogReader reader = new LogReader(logDir, startLSN, Long.MAX_VALUE)) {
+                while (reader.next()) {
+                    byte type = reader.type();
+                    if (type != LogRecord.UPDATE && type != LogRecord.COMPENSATION) {
+                        continue;
                     }
+                    int taid = reader.taid();
+                    boolean loser = losers.contains(taid);
+                    Long recLSN = dirtyPages == null ? null : dirtyPages.get(reader.pageid());
+                    boolean redo = !(type == LogRecord.UPDATE && abortedTransactions.contains(taid))
+                            && (dirtyPages == null || recLSN != null && reader.lsn() >= recLSN);
+                    if (!redo && !loser) {
+                        continue;
+                    }
+                    byte[] data = new byte[reader.dataLength()];
+                    reader.copyData(data);
+                    LogEntry entry = new LogEntry(reader.lsn(), taid, reader.pageid(), LogRecord.redoImage(type, data));
+                    if (loser && type == LogRecord.UPDATE) {
+                        entry.before = LogRecord.beforeImage(data);
+                        loserUpdates.add(entry);
+                    } else if (loser) {
+                        compensated.add(LogRecord.undoneLSN(data));
+                    }
+                    if (redo) {
+                        int worker = Math.floorMod(entry.pageid, workers);
+                        perWorker[worker]++;
+                        recordsToRedo++;
+                        List<LogEntry> batch = batches.get(worker);
+                        batch.add(entry);
+                        if (batch.size() == REDO_BATCH) {
+                            queues.get(worker).put(batch);
+                            batches.set(worker, new ArrayList<>(REDO_BATCH));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            for (int w = 0; w < workers; w++) {
+                if (!batches.get(w).isEmpty()) {
+                    queues.get(w).put(batches.get(w));
                 }
+                queues.get(w).put(END);
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
 
-                if (entry.lsn > pageLSN) {
-                    try (BufferedWriter bw = new BufferedWriter(new FileWriter(pageFile))) {
-                        bw.write(String.format("%04d,%s", entry.lsn, entry.data));
-                        System.out.println("Redo: Page " + entry.pageid + " ← " + entry.data + " [LSN=" + entry.lsn + "]");
-                    } catch (IOException e) {
-                        e.printStackTrace();
+        int redone = 0;
+        for (Future<Integer> result : results) {
+            try {
+                redone += result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        try {
+            pageStore.force();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        long elapsed = Math.max(1, System.nanoTime() - started);
+
+        long records = 0;
+        long largest = 0;
+        StringBuilder counts = new StringBuilder();
+        for (long count : perWorker) {
+            records += count;
+            largest = Math.max(largest, count);
+            counts.append(counts.length() == 0 ? "" : ",").append(count);
+        }
+        double average = (double) records / workers;
+        System.out.printf("Redo: %d records (%d pages rewritten) in %.1f ms, %.0f records/s%n",
+                records, redone, elapsed / 1e6, records * 1e9 / elapsed);
+        System.out.printf("Redo workers: %d, records per worker [%s], skew (max/avg) %.2f%n",
+                workers, counts, average == 0 ? 1.0 : largest / average);
+
+        // === Step 3: Undo the losers ===
+        phase = "undo";
+        undo(pageStore, loserUpdates, losers, compensated);
+
+        System.out.println("Recovery complete.");
+    }
+
+    // redoes the batches of one queue until END, returns the number of pages rewritten;
+    // a failing entry does not stop the worker, so the reader never waits on a full queue
+    private int redoAll(PageStore pageStore, BlockingQueue<List<LogEntry>> queue) throws InterruptedException {
+        // pageid => newest entry, when coalescing
+        Map<Integer, LogEntry> newest = REDO_COALESCE ? new HashMap<>() : null;
+        int redone = 0;
+        while (true) {
+            List<LogEntry> batch = queue.take();
+            if (batch == END) {
+                break;
+            }
+            for (LogEntry entry : batch) {
+                if (newest != null) {
+                    // the queue is in log order
+                    newest.put(entry.pageid, entry);
+                    continue;
+                }
+                try {
+                    if (redo(pageStore, entry)) {
+                        redone++;
+                        pagesRedone.increment();
                     }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
                 }
             }
+            recordsRedone.add(batch.size());
+        }
+        if (newest != null) {
+            redone += redoNewest(pageStore, newest.values());
         }
+        return redone;
+    }
 
-        System.out.println("Recovery complete.");
+    // writes the newest image of each page whose page on disk is older, in page order,
+    // so adjacent pages go out with a single write
+    private int redoNewest(PageStore pageStore, Collection<LogEntry> entries) {
+        LogEntry[] sorted = entries.toArray(new LogEntry[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(entry -> entry.pageid));
+        int[] pageids = new int[sorted.length];
+        long[] lsns = new long[sorted.length];
+        String[] data = new String[sorted.length];
+        int n = 0;
+        for (LogEntry entry : sorted) {
+            // a missing or damaged page reports -1 and is rebuilt from the log
+            if (entry.lsn > pageStore.readPageLSN(entry.pageid)) {
+                pageids[n] = entry.pageid;
+                lsns[n] = entry.lsn;
+                data[n] = entry.data;
+                n++;
+            }
+        }
+        int redone = 0;
+        int i = 0;
+        while (i < n) {
+            int run = 1;
+            while (i + run < n && run < REDO_RUN && pageids[i + run] == pageids[i] + run) {
+                run++;
+            }
+            try {
+                pageStore.writePages(pageids[i], lsns, data, i, run);
+                redone += run;
+                pagesRedone.add(run);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            i += run;
+        }
+        return redone;
+    }
+
+    // logs a compensation for every update of a loser that is not yet undone, newest
+    // first, then restores each page to the before image of the oldest one
+    private void undo(PageStore pageStore, List<LogEntry> loserUpdates, IntSet losers, Set<Long> compensated) {
+        LogWriter logWriter = PersistenceManager.getInstance().getLogWriter();
+        Map<Integer, LogEntry> restored = new HashMap<>();
+        for (int i = loserUpdates.size() - 1; i >= 0; i--) {
+            LogEntry entry = loserUpdates.get(i);
+            if (compensated.contains(entry.lsn)) {
+                continue;
+            }
+            long lsn = logWriter.append(LogRecord.COMPENSATION, entry.taid, entry.pageid,
+                    LogRecord.compensationData(entry.lsn, entry.before));
+            restored.put(entry.pageid, new LogEntry(lsn, entry.taid, entry.pageid, entry.before));
+        }
+        if (losers.isEmpty()) {
+            return;
+        }
+        long lastLSN = 0;
+        for (int taid : losers.toArray()) {
+            lastLSN = logWriter.append(LogRecord.ABORT, taid, -1, (byte[]) null);
+        }
+        // write-ahead: the compensations must be on disk before the pages they describe
+        logWriter.awaitDurable(lastLSN);
+
+        for (LogEntry entry : restored.values()) {
+            try {
+                pageStore.write(entry.pageid, entry.lsn, entry.data);
+                pagesUndone++;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            pageStore.force();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Undo: rolled back " + losers.size() + " transactions, " + restored.size() + " pages restored");
+    }
+
+    // rewrites the page of an entry if the page on disk is older
+    private boolean redo(PageStore pageStore, LogEntry entry) {
+        // a missing or damaged page reports -1 and is rebuilt from the log
+        long pageLSN = pageStore.readPageLSN(entry.pageid);
+
+        if (entry.lsn > pageLSN) {
+            try {
+                pageStore.write(entry.pageid, entry.lsn, entry.data);
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getPhase() {
+        return phase;
+    }
+
+    @Override
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    @Override
+    public long getRecordsToRedo() {
+        return recordsToRedo;
+    }
+
+    @Override
+    public long getRecordsRedone() {
+        return recordsRedone.sum();
     }
 
+    @Override
+    public long getPagesRedone() {
+        return pagesRedone.sum();
+    }
+
+    @Override
+    public long getPagesUndone() {
+        return pagesUndone;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        if (started == 0) {
+            return 0;
+        }
+        return ((phase.equals("done") ? finished : System.nanoTime()) - started) / 1_000_000;
+    }
+
+    @Override
+    public String getProgress() {
+        return String.format("phase=%s read=%d redone=%d/%d pagesRedone=%d pagesUndone=%d elapsed=%d ms", phase,
+                getRecordsRead(), getRecordsRedone(), getRecordsToRedo(), getPagesRedone(), getPagesUndone(),
+                getElapsedMillis());
+    }
+
+    // marks the end of a redo queue
+    private static final List<LogEntry> END = new ArrayList<>();
+
     // === Helper class to represent log records ===
     private static class LogEntry {
-        int lsn;
+        long lsn;
         int taid;
         int pageid;
         String data;
+        String before;  // before image of an update, null for a compensation
 
-        LogEntry(int lsn, int taid, int pageid, String data) {
+        LogEntry(long lsn, int taid, int pageid, String data) {
             this.lsn = lsn;
             this.taid = taid;
             this.pageid = pageid;
@@ -0,0 +1,26 @@
+package hamburg.dbis.recovery;
+
+/**
+ * Progress of the restart, published as {@code hamburg.dbis:type=RecoveryManager}.
+ */
+public interface RecoveryManagerMBean {
+
+    /**
+     * @return idle, analysis, redo, undo or done
+     */
+    String getPhase();
+
+    long getRecordsRead();
+
+    long getRecordsToRedo();
+
+    long getRecordsRedone();
+
+    long getPagesRedone();
+
+    long getPagesUndone();
+
+    long getElapsedMillis();
+
+    String getProgress();
+}
@@ -0,0 +1,32 @@
+package hamburg.dbis.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Sample pool backed by an array that is filled once and never changes.
+ */
+public class ArraySamplePool<T> implements SamplePool<T> {
+
+    private final Object[] elements;
+
+    public ArraySamplePool(Collection<? extends T> elements) {
+        this.elements = elements.toArray();
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) elements[index];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(elements);
+    }
+}
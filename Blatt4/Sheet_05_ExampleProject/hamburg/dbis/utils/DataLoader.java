@@ -1,28 +1,94 @@
 package hamburg.dbis.utils;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
 
+/**
+ * Loads the example data the clients write. The file is taken from
+ * {@code dbis.data.file} if set, otherwise {@code example_data.txt} is looked up in the
+ * working directory, in the project directory seen from the repository root, and
+ * finally on the classpath. Files larger than {@code dbis.data.mapThreshold} bytes
+ * (64 MB) are memory-mapped instead of read into the heap. Either way the pool holds
+ * the distinct non-empty lines in the order they first appear.
+ */
 public class DataLoader {
 
-    public static RandomHashSet<String> loadExampleData() {
-        RandomHashSet<String> data = new RandomHashSet<String>();
+    static String FILE = System.getProperty("dbis.data.file");
+    static long MAP_THRESHOLD = Long.getLong("dbis.data.mapThreshold", 64L << 20);
 
-        String filename = "Blatt5/Sheet_05_ExampleProject/example_data.txt";
+    private static final String FILENAME = "example_data.txt";
+    private static final String[] LOCATIONS = {
+            FILENAME,
+            "Blatt4/Sheet_05_ExampleProject/" + FILENAME,
+            "Blatt5/Sheet_05_ExampleProject/" + FILENAME,
+    };
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                data.add(line);
+    /**
+     * @throws IllegalStateException if there is no example data, clients would have nothing to write
+     */
+    public static SamplePool<String> loadExampleData() {
+        try {
+            Path file = findFile();
+            if (file != null) {
+                if (Files.size(file) > MAP_THRESHOLD) {
+                    return nonEmpty(new MappedSamplePool(file));
+                }
+                try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    return read(br);
+                }
+            }
+            InputStream in = DataLoader.class.getResourceAsStream("/" + FILENAME);
+            if (in == null) {
+                in = DataLoader.class.getResourceAsStream("/hamburg/dbis/main/" + FILENAME);
+            }
+            if (in != null) {
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                    return read(br);
+                }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Could not read the example data", e);
+        }
+        throw new IllegalStateException("No " + FILENAME + " found, set dbis.data.file");
+    }
+
+    private static Path findFile() {
+        if (FILE != null) {
+            return Paths.get(FILE);
+        }
+        for (String location : LOCATIONS) {
+            Path file = Paths.get(location);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
         }
+        return null;
+    }
 
-        return data;
+    // distinct lines like the set the data used to be loaded into, the same as MappedSamplePool
+    private static SamplePool<String> read(BufferedReader br) throws IOException {
+        LinkedHashSet<String> data = new LinkedHashSet<>();
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (!line.isEmpty()) {
+                data.add(line);
+            }
+        }
+        return nonEmpty(new ArraySamplePool<>(data));
+    }
 
+    private static SamplePool<String> nonEmpty(SamplePool<String> pool) {
+        if (pool.size() == 0) {
+            throw new IllegalStateException("The example data is empty");
+        }
+        return pool;
     }
 }
@@ -0,0 +1,134 @@
+package hamburg.dbis.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sample pool over the lines of a UTF-8 text file that is memory-mapped instead of read
+ * into the heap. Only the start offsets of the lines are kept; a line is decoded when it
+ * is drawn. Like the set the example data used to be loaded into, each distinct line is
+ * kept once, in the order it first appears; empty lines are skipped.
+ */
+public class MappedSamplePool implements SamplePool<String> {
+
+    // files are mapped in chunks, a single mapping is limited to 2 GB
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final MappedByteBuffer[] chunks;
+    // line i is bytes starts[i] .. ends[i] - 1
+    private final long[] starts;
+    private final long[] ends;
+    private final int size;
+
+    public MappedSamplePool(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int c = 0; c < chunks.length; c++) {
+                long position = (long) c << CHUNK_BITS;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, length - position));
+            }
+
+            long[] lineStarts = new long[1024];
+            long[] lineEnds = new long[1024];
+            int lines = 0;
+            long start = 0;
+            for (long offset = 0; offset <= length; offset++) {
+                if (offset < length && byteAt(offset) != '\n') {
+                    continue;
+                }
+                long end = offset;
+                if (end > start && byteAt(end - 1) == '\r') {
+                    end--;
+                }
+                if (end > start) {
+                    if (lines == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, 2 * lines);
+                        lineEnds = Arrays.copyOf(lineEnds, 2 * lines);
+                    }
+                    lineStarts[lines] = start;
+                    lineEnds[lines] = end;
+                    lines++;
+                }
+                start = offset + 1;
+            }
+
+            // drop duplicates with an open addressing table of line numbers, so the
+            // lines themselves are still only in the mapping
+            int[] table = new int[Integer.highestOneBit(Math.max(1, 2 * lines - 1)) << 1];
+            int distinct = 0;
+            for (int i = 0; i < lines; i++) {
+                int slot = hash(lineStarts[i], lineEnds[i]) & (table.length - 1);
+                boolean duplicate = false;
+                while (table[slot] != 0) {
+                    int j = table[slot] - 1;
+                    if (sameBytes(lineStarts[j], lineEnds[j], lineStarts[i], lineEnds[i])) {
+                        duplicate = true;
+                        break;
+                    }
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                if (!duplicate) {
+                    lineStarts[distinct] = lineStarts[i];
+                    lineEnds[distinct] = lineEnds[i];
+                    table[slot] = ++distinct;
+                }
+            }
+            starts = Arrays.copyOf(lineStarts, distinct);
+            ends = Arrays.copyOf(lineEnds, distinct);
+            size = distinct;
+        }
+    }
+
+    private byte byteAt(long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & (CHUNK_SIZE - 1)));
+    }
+
+    private int hash(long start, long end) {
+        int h = 1;
+        for (long offset = start; offset < end; offset++) {
+            h = 31 * h + byteAt(offset);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private boolean sameBytes(long start1, long end1, long start2, long end2) {
+        if (end1 - start1 != end2 - start2) {
+            return false;
+        }
+        for (long k = 0; k < end1 - start1; k++) {
+            if (byteAt(start1 + k) != byteAt(start2 + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String get(int index) {
+        long start = starts[index];
+        byte[] bytes = new byte[(int) (ends[index] - start)];
+        int copied = 0;
+        while (copied < bytes.length) {
+            long offset = start + copied;
+            // absolute bulk get, the mapped buffers are shared between threads
+            MappedByteBuffer chunk = chunks[(int) (offset >>> CHUNK_BITS)];
+            int position = (int) (offset & (CHUNK_SIZE - 1));
+            int n = Math.min(bytes.length - copied, chunk.limit() - position);
+            chunk.get(position, bytes, copied, n);
+            copied += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+package hamburg.dbis.utils;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Publishes runtime metrics: as MBeans under {@code hamburg.dbis:type=...}, e.g. for
+ * jconsole, and as a text dump on standard output every {@code dbis.metrics.intervalMs}
+ * (1000) if {@code dbis.metrics.dump} is set.
+ */
+public class Metrics {
+
+    static long INTERVAL_MS = Long.getLong("dbis.metrics.intervalMs", 1000);
+    static boolean DUMP = Boolean.getBoolean("dbis.metrics.dump");
+
+    /**
+     * Registers {@code mbean}, a standard MBean, with the platform MBean server.
+     */
+    public static void register(Object mbean, String type) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName("hamburg.dbis:type=" + type));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by an earlier instance
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts a daemon thread that runs {@code sample} at every interval, then prints
+     * {@code report} if the dump is enabled. Interrupting the thread stops it.
+     */
+    public static Thread startReporter(String name, Runnable sample, Supplier<String> report) {
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                sample.run();
+                if (DUMP) {
+                    System.out.println("[" + name + "] " + report.get());
+                }
+            }
+        }, name);
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+}
@@ -0,0 +1,36 @@
+package hamburg.dbis.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Rate of a growing counter per second, measured between the two last calls of
+ * {@link #sample()}. The counter itself is not touched, so counting stays as cheap as
+ * it is.
+ */
+public class RateMeter {
+
+    private final LongSupplier counter;
+    private long lastValue;
+    private long lastNanos;
+    private volatile double rate;
+
+    public RateMeter(LongSupplier counter) {
+        this.counter = counter;
+        this.lastValue = counter.getAsLong();
+        this.lastNanos = System.nanoTime();
+    }
+
+    public synchronized void sample() {
+        long value = counter.getAsLong();
+        long now = System.nanoTime();
+        if (now > lastNanos) {
+            rate = (value - lastValue) * 1e9 / (now - lastNanos);
+        }
+        lastValue = value;
+        lastNanos = now;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,26 @@
+package hamburg.dbis.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Indexed collection to draw random elements from. Sampling is O(1) and uses the
+ * random number generator of the calling thread, so any number of threads can draw
+ * from one pool without contention.
+ */
+public interface SamplePool<T> {
+
+    int size();
+
+    T get(int index);
+
+    /**
+     * @return a uniformly chosen element, or null if the pool is empty
+     */
+    default T getRandomElement() {
+        int size = size();
+        if (size <= 0) {
+            return null;
+        }
+        return get(ThreadLocalRandom.current().nextInt(size));
+    }
+}